@@ -0,0 +1,22 @@
+#!/bin/sh
+# Builds an application class-data-sharing (AppCDS) archive for advancedbank.BankingApp (JDK 13 or later)
+# The training run opens the window in fast-start mode, waits for the deferred panels
+# and printing classes to load, then exits and dumps every loaded class to the archive
+# Needs a display, like the application itself
+set -e
+cd "$(dirname "$0")/.."
+
+mkdir -p build/classes
+javac -encoding UTF-8 -d build/classes $(find src -name '*.java')
+jar cfe build/bankingapp.jar advancedbank.BankingApp -C build/classes .
+
+# CDS only archives classes loaded from JAR files, so the archive is tied to build/bankingapp.jar
+rm -f build/cds_training_journal.txt
+java -XX:ArchiveClassesAtExit=build/bankingapp.jsa \
+     -Dbank.fastStart=true -Dbank.exitAfterStartup=true \
+     -Dbank.journal=build/cds_training_journal.txt \
+     -cp build/bankingapp.jar advancedbank.BankingApp
+
+echo "Archive written to build/bankingapp.jsa. Start the application with:"
+echo "  java -XX:SharedArchiveFile=build/bankingapp.jsa -Dbank.fastStart=true -cp build/bankingapp.jar advancedbank.BankingApp"
+echo "Add -Dbank.startupTiming=true to print the time to first frame"
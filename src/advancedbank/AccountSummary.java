@@ -0,0 +1,150 @@
+package advancedbank;
+
+/*
+ * Account Summary: view model behind the Account Overview labels
+ * Tracks which inputs changed since each derived field was last computed and recomputes only
+ * the fields that depend on them; formatted strings are cached until invalidated
+ * Eligibility comes from the same EligibilityRule as the account's loan check, so the label always
+ * shows the limit loans are checked against; inputs the rule reads from outside the account are
+ * reported with invalidateEligibility()
+ * Hit and miss counters show how often a cached value could be reused
+ */
+import bankcore.EligibilityRule;
+
+import java.text.DecimalFormat;
+
+public class AccountSummary {
+    // Inputs, one dirty bit each
+    private static final int BALANCE = 1;
+    private static final int LOAN = 2; // Loan amount and type
+    private static final int EMI = 4; // EMI amount and remaining tenure
+    private static final int EXTERNAL = 8; // Eligibility inputs outside the account
+    private static final int ALL_INPUTS = BALANCE | LOAN | EMI | EXTERNAL;
+
+    // Derived fields and the inputs each one is computed from
+    private static final int BALANCE_TEXT = 0;
+    private static final int LOAN_TEXT = 1;
+    private static final int EMI_TEXT = 2;
+    private static final int ELIGIBILITY = 3;
+    private static final int[] INPUTS = { BALANCE, LOAN, EMI, BALANCE | LOAN | EXTERNAL };
+
+    private final DecimalFormat amountFormat = new DecimalFormat("#,##0.00");
+    private final EligibilityRule eligibilityRule;
+
+    // Inputs
+    private double savingsBalance;
+    private double loanAmount;
+    private String currentLoanType;
+    private double emiAmount;
+    private int emiTenure;
+
+    // Derived fields, with the inputs changed since each was computed
+    private final int[] dirty = { ALL_INPUTS, ALL_INPUTS, ALL_INPUTS, ALL_INPUTS };
+    private String balanceText, loanText, emiText, eligibilityText;
+    private double eligibility;
+
+    private long hits, misses;
+
+    public AccountSummary(EligibilityRule eligibilityRule) {
+        this.eligibilityRule = eligibilityRule;
+    }
+
+    // Sets every account input, invalidating only the derived fields whose inputs actually changed
+    public synchronized void update(double savingsBalance, double loanAmount, String currentLoanType, double emiAmount, int emiTenure) {
+        if (Double.compare(this.savingsBalance, savingsBalance) != 0) {
+            this.savingsBalance = savingsBalance;
+            changed(BALANCE);
+        }
+        if (Double.compare(this.loanAmount, loanAmount) != 0 || !equals(this.currentLoanType, currentLoanType)) {
+            this.loanAmount = loanAmount;
+            this.currentLoanType = currentLoanType;
+            changed(LOAN);
+        }
+        if (Double.compare(this.emiAmount, emiAmount) != 0 || this.emiTenure != emiTenure) {
+            this.emiAmount = emiAmount;
+            this.emiTenure = emiTenure;
+            changed(EMI);
+        }
+    }
+
+    // For eligibility inputs the summary does not track itself, e.g. a rule that reads a rate table
+    public synchronized void invalidateEligibility() {
+        changed(EXTERNAL);
+    }
+
+    private void changed(int input) {
+        for (int field = 0; field < dirty.length; field++) {
+            dirty[field] |= input & INPUTS[field];
+        }
+    }
+
+    public synchronized String getBalanceText() {
+        if (isDirty(BALANCE_TEXT)) {
+            balanceText = "Savings Balance: $" + amountFormat.format(savingsBalance);
+        }
+        return balanceText;
+    }
+
+    public synchronized String getLoanText() {
+        if (isDirty(LOAN_TEXT)) {
+            loanText = "Loan Amount: $" + amountFormat.format(loanAmount) + (currentLoanType != null ? " (" + currentLoanType + ")" : "");
+        }
+        return loanText;
+    }
+
+    public synchronized String getEmiText() {
+        if (isDirty(EMI_TEXT)) {
+            emiText = "EMI: $" + amountFormat.format(emiAmount) + " (Remaining: " + emiTenure + " months)";
+        }
+        return emiText;
+    }
+
+    public synchronized double getEligibility() {
+        refreshEligibility();
+        return eligibility;
+    }
+
+    public synchronized String getEligibilityText() {
+        refreshEligibility();
+        return eligibilityText;
+    }
+
+    private void refreshEligibility() {
+        if (isDirty(ELIGIBILITY)) {
+            eligibility = eligibilityRule.eligibility(savingsBalance, loanAmount, currentLoanType);
+            eligibilityText = "Loan Eligibility: $" + amountFormat.format(eligibility);
+        }
+    }
+
+    // Counts the lookup and clears the field's changed inputs so the caller recomputes exactly once
+    private boolean isDirty(int field) {
+        if (dirty[field] == 0) {
+            hits++;
+            return false;
+        }
+        misses++;
+        dirty[field] = 0;
+        return true;
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized double getHitRatio() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    public synchronized String describeStats() {
+        return "Account summary cache: " + hits + " hits, " + misses + " recomputations, hit ratio "
+            + String.format("%.1f%%", getHitRatio() * 100);
+    }
+}
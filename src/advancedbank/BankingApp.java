@@ -9,8 +9,20 @@ package advancedbank;
  * Transaction Logging in a separate file
  * Separate options for Personal, Home and Car Loans
  * View in Full Screen Mode
+ * Ledger journal with recovery on restart and hot-standby replication to followers
+ * Velocity limits on withdrawals and loan requests
+ * Cached account summary, recomputed only when its inputs change
+ * Fast-start mode: history table, log console and printing are built after the first frame
+ * Operation IDs so a double-click or retried submission is applied only once
+ * Account rules and the operation pipeline come from the shared bankcore package
  */
+import bankcore.Ledger;
+import bankcore.Operation;
+import bankcore.OperationMetrics;
+
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.*;
@@ -18,27 +30,52 @@ import java.awt.print.*;
 import java.io.*;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
 
 public class BankingApp extends JFrame implements Printable {
-    private double savingsBalance = 1000.00; // Initial balance
-    private double loanAmount = 0.0;
-    private double emiAmount = 0.0;
-    private int emiTenure = 0;
-    private String currentLoanType = null;
-    private final double SAVINGS_INTEREST_RATE = 0.04; // 4% annual interest for savings
-    private final double PERSONAL_LOAN_RATE = 0.10; // 10% for personal loan
-    private final double HOME_LOAN_RATE = 0.07; // 7% for home loan
-    private final double CAR_LOAN_RATE = 0.08; // 8% for car loan
-    private final int PERSONAL_LOAN_TENURE = 12; // 12 months
-    private final int HOME_LOAN_TENURE = 60; // 60 months
-    private final int CAR_LOAN_TENURE = 36; // 36 months
+    public static final double OPENING_BALANCE = 1000.00;
+    public static final String ACCOUNT_ID = "SB-0001";
+    public static final String JOURNAL_PROPERTY = "bank.journal";
+    public static final String REPLICATION_HOST_PROPERTY = "bank.replication.host";
+    public static final String REPLICATION_PORT_PROPERTY = "bank.replication.port";
+    public static final String REPLICATION_MODE_PROPERTY = "bank.replication.mode";
+    public static final String REPLICATION_TIMEOUT_PROPERTY = "bank.replication.syncTimeoutMs";
+    public static final String REPLICATION_LAG_REPORT_PROPERTY = "bank.replication.lagReportMs";
+    public static final String FAST_START_PROPERTY = "bank.fastStart";
+    public static final String STARTUP_TIMING_PROPERTY = "bank.startupTiming";
+    public static final String EXIT_AFTER_STARTUP_PROPERTY = "bank.exitAfterStartup"; // For the CDS training run
+    public static final String DEDUP_TTL_PROPERTY = "bank.dedup.ttlMs";
+    public static final String DEDUP_CAPACITY_PROPERTY = "bank.dedup.maxEntries";
+
+    private static final long launchNanos = System.nanoTime(); // Class initialization, just before main()
+
     private ExecutorService executor = Executors.newFixedThreadPool(3); // Thread pool for operations
     private DefaultTableModel transactionModel;
     private File logFile = new File("transaction_log.txt");
+    private LedgerJournal journal;
+    private ReplicationLeader replicationLeader;
+    private final VelocityLimiter velocityLimiter = new VelocityLimiter();
+    private final AccountSummary accountSummary = new AccountSummary(LedgerStages.LOAN_ELIGIBILITY);
+    private final DeduplicationCache operationCache = new DeduplicationCache(
+        Long.getLong(DEDUP_TTL_PROPERTY, 24 * 60 * 60 * 1000L), 8, Integer.getInteger(DEDUP_CAPACITY_PROPERTY, 1000000));
+    private final OperationMetrics operationMetrics = new OperationMetrics();
+    private final LedgerStages.JournalStage journalStage;
+    private final Ledger ledger; // Account state and rules; the UI only renders its results
+
+    // Operation IDs of the forms on screen, replaced whenever a form's input changes (EDT only)
+    private long depositOperationId = newOperationId();
+    private long withdrawOperationId = newOperationId();
+    private long loanOperationId = newOperationId();
+    private long emiOperationId = newOperationId();
+    private long interestOperationId = newOperationId();
 
     // UI Components
     private JLabel balanceLabel, loanLabel, emiLabel, eligibilityLabel;
@@ -47,8 +84,22 @@ public class BankingApp extends JFrame implements Printable {
     private JButton depositButton, withdrawButton, loanButton, emiButton, applyInterestButton, printStatementButton;
     private JTable transactionTable;
     private JTextArea logArea;
+    private JPanel southPanel;
+    private final boolean fastStart = Boolean.getBoolean(FAST_START_PROPERTY);
+    private final StringBuilder pendingLog = new StringBuilder(); // Log lines written before the log console exists
+    private final CountDownLatch journalReplayed = new CountDownLatch(1); // Operations wait for the background replay
 
     public BankingApp() {
+        this(openDefaultJournal());
+    }
+
+    BankingApp(LedgerJournal journal) {
+        this.journal = journal;
+        this.journalStage = journal != null ? new LedgerStages.JournalStage(journal, ACCOUNT_ID) : null;
+        this.ledger = LedgerStages.newLedger(ACCOUNT_ID, OPENING_BALANCE, journalStage, velocityLimiter, operationCache,
+            accountSummary, operationMetrics);
+        ledger.addInterceptor(Ledger.Stage.NOTIFY, "ui", (operation, account) -> onLedgerResult(operation.getResult()));
+
         // Frame setup
         setTitle("Advanced Banking Application");
         setSize(900, 700);
@@ -63,11 +114,53 @@ public class BankingApp extends JFrame implements Printable {
         // Initialize log file
         initLogFile();
 
+        // Restore account state from the end of the journal and start serving followers; the full
+        // replay runs in the background, after the first frame in fast-start mode
+        restoreLatestState();
+        if (!fastStart) {
+            startJournalReplay();
+        }
+        replicationLeader = startReplicationLeader(journal, this::logMessage);
+        if (journalStage != null) {
+            journalStage.setReplicationLeader(replicationLeader);
+        }
+        if (replicationLeader != null) {
+            logMessage("Replication leader listening on port " + replicationLeader.getPort() + " (" + replicationLeader.getMode() + " commit)");
+        }
+        logMessage("Operation pipeline: " + ledger.describePipeline());
+
         // Add window listener to shutdown executor
         addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowOpened(WindowEvent e) {
+                reportStartupTime("First frame shown");
+                if (fastStart) {
+                    startDeferredInitialization();
+                } else if (Boolean.getBoolean(EXIT_AFTER_STARTUP_PROPERTY)) {
+                    System.exit(0);
+                }
+            }
+
             @Override
             public void windowClosing(WindowEvent e) {
                 executor.shutdown();
+                System.out.println(velocityLimiter.describeStats());
+                System.out.println(accountSummary.describeStats());
+                System.out.println(operationCache.describeStats());
+                System.out.println(operationMetrics.describeStats());
+                if (replicationLeader != null) {
+                    System.out.println("Replication lag: " + replicationLeader.describeLag());
+                }
+                try {
+                    if (replicationLeader != null) {
+                        replicationLeader.close();
+                    }
+                    if (BankingApp.this.journal != null) {
+                        BankingApp.this.journal.close();
+                    }
+                } catch (IOException ex) {
+                    // Exiting anyway
+                }
             }
         });
 
@@ -95,13 +188,13 @@ public class BankingApp extends JFrame implements Printable {
         gbc.fill = GridBagConstraints.HORIZONTAL;
         gbc.weightx = 0.5;
 
-        balanceLabel = new JLabel("Savings Balance: $" + formatAmount(savingsBalance));
+        balanceLabel = new JLabel(accountSummary.getBalanceText());
         balanceLabel.setFont(new Font("Arial", Font.BOLD, 14));
-        loanLabel = new JLabel("Loan Amount: $" + formatAmount(loanAmount) + (currentLoanType != null ? " (" + currentLoanType + ")" : ""));
+        loanLabel = new JLabel(accountSummary.getLoanText());
         loanLabel.setFont(new Font("Arial", Font.BOLD, 14));
-        emiLabel = new JLabel("EMI: $" + formatAmount(emiAmount) + " (Remaining: " + emiTenure + " months)");
+        emiLabel = new JLabel(accountSummary.getEmiText());
         emiLabel.setFont(new Font("Arial", Font.BOLD, 14));
-        eligibilityLabel = new JLabel("Loan Eligibility: $" + formatAmount(calculateLoanEligibility()));
+        eligibilityLabel = new JLabel(accountSummary.getEligibilityText());
         eligibilityLabel.setFont(new Font("Arial", Font.BOLD, 14));
 
         // Line 1: Savings Balance and Loan Amount
@@ -221,12 +314,31 @@ public class BankingApp extends JFrame implements Printable {
         centerPanel.add(printStatementButton, gbc);
 
         // South Panel - Transaction History and Log
-        JPanel southPanel = new JPanel(new BorderLayout(10, 10));
+        southPanel = new JPanel(new BorderLayout(10, 10));
         southPanel.setBorder(BorderFactory.createEmptyBorder(15, 20, 15, 20));
         southPanel.setBackground(new Color(240, 242, 245));
+        transactionModel = new DefaultTableModel(new Object[]{"Date", "Type", "Amount", "Balance"}, 0);
+        if (fastStart) {
+            // Reserve the space so the layout does not jump when the panels arrive
+            JLabel loadingLabel = createLabel("Loading transaction history...");
+            loadingLabel.setHorizontalAlignment(SwingConstants.CENTER);
+            southPanel.add(loadingLabel, BorderLayout.CENTER);
+            southPanel.setPreferredSize(new Dimension(0, 360));
+        } else {
+            buildHistoryAndLogPanels();
+        }
+
+        // Add panels to frame
+        add(northPanel, BorderLayout.NORTH);
+        add(centerPanel, BorderLayout.CENTER);
+        add(southPanel, BorderLayout.SOUTH);
 
+        // Add action listeners
+        addActionListeners();
+    }
+
+    private void buildHistoryAndLogPanels() {
         // Transaction Table
-        transactionModel = new DefaultTableModel(new Object[]{"Date", "Type", "Amount", "Balance"}, 0);
         transactionTable = new JTable(transactionModel);
         transactionTable.setRowHeight(25);
         transactionTable.setFont(new Font("Arial", Font.PLAIN, 12));
@@ -259,16 +371,178 @@ public class BankingApp extends JFrame implements Printable {
             new Font("Arial", Font.BOLD, 16)
         ));
 
+        southPanel.removeAll();
+        southPanel.setPreferredSize(null);
         southPanel.add(tableScrollPane, BorderLayout.CENTER);
         southPanel.add(logScrollPane, BorderLayout.SOUTH);
+        southPanel.revalidate();
+        southPanel.repaint();
 
-        // Add panels to frame
-        add(northPanel, BorderLayout.NORTH);
-        add(centerPanel, BorderLayout.CENTER);
-        add(southPanel, BorderLayout.SOUTH);
+        // Messages logged before the console existed
+        if (pendingLog.length() > 0) {
+            appendToLogArea(pendingLog.toString());
+            pendingLog.setLength(0);
+        }
+    }
 
-        // Add action listeners
-        addActionListeners();
+    // Loads the table, text and printing classes off the EDT, then builds the panels on it
+    private void startDeferredInitialization() {
+        startJournalReplay();
+        Thread preloader = new Thread(() -> {
+            try {
+                Class.forName("javax.swing.JTable");
+                Class.forName("javax.swing.table.DefaultTableCellRenderer");
+                Class.forName("javax.swing.JTextArea");
+                PrinterJob.getPrinterJob().getPrintService(); // Print services are looked up once and cached
+            } catch (ClassNotFoundException | RuntimeException ex) {
+                // Nothing was preloaded; the EDT loads what it needs
+            }
+            SwingUtilities.invokeLater(() -> {
+                buildHistoryAndLogPanels();
+                reportStartupTime("Deferred components ready");
+                if (Boolean.getBoolean(EXIT_AFTER_STARTUP_PROPERTY)) {
+                    System.exit(0);
+                }
+            });
+        }, "fast-start-preload");
+        preloader.setDaemon(true);
+        preloader.start();
+    }
+
+    // Prints startup milestones when run with -Dbank.startupTiming=true
+    private static void reportStartupTime(String milestone) {
+        if (!Boolean.getBoolean(STARTUP_TIMING_PROPERTY)) {
+            return;
+        }
+        long sinceMain = (System.nanoTime() - launchNanos) / 1000000;
+        String sinceJvmStart = ProcessHandle.current().info().startInstant()
+            .map(start -> ", " + (System.currentTimeMillis() - start.toEpochMilli()) + " ms since JVM start")
+            .orElse("");
+        System.out.println(milestone + ": " + sinceMain + " ms since main()" + sinceJvmStart);
+    }
+
+    private static LedgerJournal openDefaultJournal() {
+        try {
+            return new LedgerJournal(new File(System.getProperty(JOURNAL_PROPERTY, "ledger_journal.txt")));
+        } catch (IOException ex) {
+            System.err.println("Failed to open ledger journal: " + ex.getMessage());
+            return null;
+        }
+    }
+
+    // Starts a replication leader when a port is configured, e.g. -Dbank.replication.port=7070
+    // Lag reports go to the reporter every -Dbank.replication.lagReportMs (default 10000, 0 turns them off)
+    static ReplicationLeader startReplicationLeader(LedgerJournal journal, Consumer<String> lagReporter) {
+        String port = System.getProperty(REPLICATION_PORT_PROPERTY);
+        if (journal == null || port == null) {
+            return null;
+        }
+        try {
+            ReplicationLeader leader = new ReplicationLeader(
+                journal,
+                System.getProperty(REPLICATION_HOST_PROPERTY, "127.0.0.1"),
+                Integer.parseInt(port),
+                ReplicationLeader.CommitMode.valueOf(System.getProperty(REPLICATION_MODE_PROPERTY, "async").toUpperCase()),
+                Long.parseLong(System.getProperty(REPLICATION_TIMEOUT_PROPERTY, "2000"))
+            );
+            leader.start();
+            long lagReportMillis = Long.getLong(REPLICATION_LAG_REPORT_PROPERTY, 10000);
+            if (lagReportMillis > 0) {
+                leader.startLagReports(lagReportMillis, lagReporter);
+            }
+            return leader;
+        } catch (IOException | IllegalArgumentException ex) {
+            System.err.println("Failed to start replication leader: " + ex.getMessage());
+            return null;
+        }
+    }
+
+    // Restores the account from its newest journal event, read from the end of the file, so the
+    // first frame does not wait for the whole journal
+    private void restoreLatestState() {
+        if (journal == null) {
+            logMessage("Ledger journal unavailable; transactions will not be persisted");
+            return;
+        }
+        LedgerEvent latest;
+        try {
+            latest = journal.findLast(ACCOUNT_ID);
+        } catch (IOException | IllegalArgumentException ex) {
+            logMessage("Failed to recover from ledger journal: " + ex.getMessage());
+            return;
+        }
+        if (latest == null) {
+            return;
+        }
+        LedgerState state = new LedgerState(OPENING_BALANCE);
+        state.apply(latest);
+        ledger.restore(state.getSavingsBalance(), state.getLoanAmount(), state.getEmiAmount(), state.getEmiTenure(), state.getCurrentLoanType());
+        accountSummary.update(state.getSavingsBalance(), state.getLoanAmount(), state.getCurrentLoanType(), state.getEmiAmount(), state.getEmiTenure());
+        if (state.getLoanAmount() > 0) {
+            double emi = state.getEmiAmount();
+            SwingUtilities.invokeLater(() -> {
+                emiPayField.setText(formatAmount(emi));
+                emiPayField.setEditable(true);
+                emiButton.setEnabled(true);
+            });
+        }
+        updateUI();
+        logMessage("Recovered account state from ledger journal at offset " + state.getLastOffset());
+    }
+
+    // Rebuilds what needs the whole journal on a background thread: duplicate protection,
+    // velocity windows and the transaction history; operations wait for it, see submitOperation
+    private void startJournalReplay() {
+        if (journal == null) {
+            journalReplayed.countDown();
+            return;
+        }
+        long lastOffset = journal.getLastOffset(); // Nothing is appended until the replay is done
+        Thread replayer = new Thread(() -> {
+            try {
+                replayJournal(lastOffset);
+            } finally {
+                journalReplayed.countDown();
+            }
+        }, "journal-replay");
+        replayer.setDaemon(true);
+        replayer.start();
+    }
+
+    private void replayJournal(long lastOffset) {
+        long now = System.currentTimeMillis();
+        long dedupCutoff = now - Long.getLong(DEDUP_TTL_PROPERTY, 24 * 60 * 60 * 1000L);
+        long velocityCutoff = now - velocityLimiter.getLongestWindowMillis();
+        List<Vector<Object>> rows = new ArrayList<>();
+        try {
+            journal.replay(1, lastOffset, event -> {
+                if (event.getOperationId() != 0 && event.getTimestamp() > dedupCutoff) {
+                    operationCache.putIfAbsent(event.getOperationId(), event.getOffset(), event.getAmount(), event.getBalance(),
+                        event.getTimestamp());
+                }
+                if (event.getAccountId().equals(ACCOUNT_ID)) {
+                    if (event.getTimestamp() > velocityCutoff) {
+                        // Withdrawals and loans still inside a window count against today's limits after a restart
+                        if (event.getType() == LedgerEvent.Type.WITHDRAWAL) {
+                            velocityLimiter.record(ACCOUNT_ID, VelocityLimiter.WITHDRAWAL, event.getAmount(), event.getTimestamp());
+                        } else if (event.getType() == LedgerEvent.Type.LOAN) {
+                            velocityLimiter.record(ACCOUNT_ID, event.getLoanType(), event.getAmount(), event.getTimestamp());
+                        }
+                    }
+                    rows.add(newTransactionRow(event.getTimestamp(), event.getDescription(), event.getAmount(), event.getBalance()));
+                }
+            });
+        } catch (IOException | IllegalArgumentException ex) {
+            logMessage("Failed to replay ledger journal: " + ex.getMessage());
+            return;
+        }
+        // One EDT task for the whole history, queued before any new operation can add a row
+        SwingUtilities.invokeLater(() -> {
+            for (Vector<Object> row : rows) {
+                transactionModel.addRow(row);
+            }
+        });
+        reportStartupTime("Journal replayed (" + lastOffset + " events)");
     }
 
     private void initLogFile() {
@@ -299,68 +573,126 @@ public class BankingApp extends JFrame implements Printable {
     }
 
     private void addActionListeners() {
-        depositButton.addActionListener(e -> executor.submit(() -> processDeposit()));
-        withdrawButton.addActionListener(e -> executor.submit(() -> processWithdrawal()));
-        loanButton.addActionListener(e -> executor.submit(() -> processLoanRequest()));
-        emiButton.addActionListener(e -> executor.submit(() -> processEMIPayment()));
-        applyInterestButton.addActionListener(e -> executor.submit(() -> applySavingsInterest()));
-        printStatementButton.addActionListener(e -> executor.submit(() -> printBankStatement()));
+        // Any edit makes a form a new operation, so only a click on an unchanged form resubmits the same operation ID
+        depositField.getDocument().addDocumentListener(onEdit(() -> depositOperationId = newOperationId()));
+        withdrawField.getDocument().addDocumentListener(onEdit(() -> withdrawOperationId = newOperationId()));
+        loanRequestField.getDocument().addDocumentListener(onEdit(() -> loanOperationId = newOperationId()));
+        loanTypeCombo.addItemListener(e -> {
+            if (e.getStateChange() == ItemEvent.SELECTED) {
+                loanOperationId = newOperationId();
+            }
+        });
+        emiPayField.getDocument().addDocumentListener(onEdit(() -> emiOperationId = newOperationId()));
+
+        // Inputs and operation IDs are read on the EDT at click time, so a repeated click resubmits the same operation
+        depositButton.addActionListener(e -> {
+            long operationId = depositOperationId;
+            String input = depositField.getText();
+            submitOperation(() -> processDeposit(operationId, input));
+        });
+        withdrawButton.addActionListener(e -> {
+            long operationId = withdrawOperationId;
+            String input = withdrawField.getText();
+            submitOperation(() -> processWithdrawal(operationId, input));
+        });
+        loanButton.addActionListener(e -> {
+            long operationId = loanOperationId;
+            String input = loanRequestField.getText();
+            String selectedLoanType = (String) loanTypeCombo.getSelectedItem();
+            submitOperation(() -> processLoanRequest(operationId, input, selectedLoanType));
+        });
+        emiButton.addActionListener(e -> {
+            long operationId = emiOperationId;
+            String input = emiPayField.getText();
+            submitOperation(() -> processEMIPayment(operationId, input));
+        });
+        applyInterestButton.addActionListener(e -> {
+            long operationId = interestOperationId;
+            submitOperation(() -> applySavingsInterest(operationId));
+        });
+        printStatementButton.addActionListener(e -> submitOperation(() -> printBankStatement()));
+    }
+
+    // Operations run once the journal replay has rebuilt duplicate protection, velocity windows and the history
+    private void submitOperation(Runnable operation) {
+        executor.submit(() -> {
+            try {
+                journalReplayed.await();
+            } catch (InterruptedException ex) {
+                logMessage("Operation interrupted while the ledger journal was replayed");
+                return;
+            }
+            operation.run();
+        });
     }
 
-    private void processDeposit() {
+    private static DocumentListener onEdit(Runnable action) {
+        return new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                action.run();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                action.run();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                // Attribute changes only; plain text fields do not fire these
+            }
+        };
+    }
+
+    // Clears a form once its submission completes, unless the user already typed the next one; clearing renews the ID
+    private static void clearIfUnchanged(JTextField field, String input) {
+        SwingUtilities.invokeLater(() -> {
+            if (field.getText().equals(input)) {
+                field.setText("");
+            }
+        });
+    }
+
+    private void processDeposit(long operationId, String input) {
         try {
-            double amount = Double.parseDouble(depositField.getText());
+            double amount = Double.parseDouble(input);
             if (amount <= 0) {
                 logMessage("Invalid deposit amount!");
                 return;
             }
-            synchronized (this) {
-                savingsBalance += amount;
-                addTransaction("Deposit", amount, savingsBalance);
-                updateUI();
-                logMessage("Deposited $" + formatAmount(amount) + " successfully");
-            }
+            ledger.deposit(operationId, amount);
             Thread.sleep(1000); // Simulate processing time
         } catch (NumberFormatException ex) {
             logMessage("Invalid deposit amount format!");
         } catch (InterruptedException ex) {
             logMessage("Deposit processing interrupted");
         } finally {
-            SwingUtilities.invokeLater(() -> depositField.setText(""));
+            clearIfUnchanged(depositField, input);
         }
     }
 
-    private void processWithdrawal() {
+    private void processWithdrawal(long operationId, String input) {
         try {
-            double amount = Double.parseDouble(withdrawField.getText());
+            double amount = Double.parseDouble(input);
             if (amount <= 0) {
                 logMessage("Invalid withdrawal amount!");
                 return;
             }
-            synchronized (this) {
-                if (amount <= savingsBalance) {
-                    savingsBalance -= amount;
-                    addTransaction("Withdrawal", amount, savingsBalance);
-                    updateUI();
-                    logMessage("Withdrawn $" + formatAmount(amount) + " successfully");
-                } else {
-                    logMessage("Insufficient balance!");
-                }
-            }
+            ledger.withdraw(operationId, amount);
             Thread.sleep(1000); // Simulate processing time
         } catch (NumberFormatException ex) {
             logMessage("Invalid withdrawal amount format!");
         } catch (InterruptedException ex) {
             logMessage("Withdrawal processing interrupted");
         } finally {
-            SwingUtilities.invokeLater(() -> withdrawField.setText(""));
+            clearIfUnchanged(withdrawField, input);
         }
     }
 
-    private void processLoanRequest() {
+    private void processLoanRequest(long operationId, String input, String selectedLoanType) {
         try {
-            double amount = Double.parseDouble(loanRequestField.getText());
-            String selectedLoanType = (String) loanTypeCombo.getSelectedItem();
+            double amount = Double.parseDouble(input);
             if (amount <= 0) {
                 logMessage("Invalid loan amount!");
                 return;
@@ -369,102 +701,133 @@ public class BankingApp extends JFrame implements Printable {
                 logMessage("Please select a loan type!");
                 return;
             }
-            synchronized (this) {
-                double eligibility = calculateLoanEligibility();
-                if (loanAmount == 0 && amount <= eligibility) {
-                    loanAmount = amount;
-                    currentLoanType = selectedLoanType;
-                    switch (selectedLoanType) {
-                        case "Personal":
-                            emiTenure = PERSONAL_LOAN_TENURE;
-                            emiAmount = calculateEMI(amount, PERSONAL_LOAN_RATE, emiTenure);
-                            break;
-                        case "Home":
-                            emiTenure = HOME_LOAN_TENURE;
-                            emiAmount = calculateEMI(amount, HOME_LOAN_RATE, emiTenure);
-                            break;
-                        case "Car":
-                            emiTenure = CAR_LOAN_TENURE;
-                            emiAmount = calculateEMI(amount, CAR_LOAN_RATE, emiTenure);
-                            break;
-                    }
-                    SwingUtilities.invokeLater(() -> {
-                        emiPayField.setText(formatAmount(emiAmount));
-                        emiPayField.setEditable(true);
-                        emiButton.setEnabled(true);
-                        loanTypeCombo.setSelectedIndex(0);
-                    });
-                    addTransaction(currentLoanType + " Loan Taken", amount, savingsBalance);
-                    updateUI();
-                    logMessage(currentLoanType + " Loan of $" + formatAmount(amount) + " approved. EMI: $" + formatAmount(emiAmount) + "/month");
-                } else if (loanAmount > 0) {
-                    logMessage("Existing loan must be cleared first!");
-                } else {
-                    logMessage("Loan amount exceeds eligibility ($" + formatAmount(eligibility) + ")!");
-                }
-            }
+            ledger.requestLoan(operationId, selectedLoanType, amount);
             Thread.sleep(1500); // Simulate loan processing time
         } catch (NumberFormatException ex) {
             logMessage("Invalid loan amount format!");
         } catch (InterruptedException ex) {
             logMessage("Loan processing interrupted");
         } finally {
-            SwingUtilities.invokeLater(() -> loanRequestField.setText(""));
+            clearIfUnchanged(loanRequestField, input);
         }
     }
 
-    private void processEMIPayment() {
+    private void processEMIPayment(long operationId, String input) {
         try {
-            double amount = Double.parseDouble(emiPayField.getText());
-            if (amount != emiAmount) {
-                logMessage("Please pay exact EMI amount: $" + formatAmount(emiAmount));
-                return;
-            }
-            synchronized (this) {
-                if (amount <= savingsBalance) {
-                    savingsBalance -= amount;
-                    loanAmount -= amount;
-                    emiTenure--;
-                    addTransaction("EMI Payment (" + currentLoanType + ")", amount, savingsBalance);
-                    if (emiTenure <= 0 || loanAmount <= 0) {
-                        loanAmount = 0;
-                        emiAmount = 0;
-                        emiTenure = 0;
-                        currentLoanType = null;
-                        SwingUtilities.invokeLater(() -> {
-                            emiPayField.setEditable(false);
-                            emiButton.setEnabled(false);
-                        });
-                        logMessage(currentLoanType + " Loan fully repaid!");
-                    } else {
-                        logMessage("EMI of $" + formatAmount(amount) + " paid successfully");
-                    }
-                    updateUI();
-                } else {
-                    logMessage("Insufficient balance to pay EMI!");
-                }
-            }
+            // The field shows the EMI with grouping separators; the ledger checks it against the current EMI under its lock
+            double amount = Double.parseDouble(input.replace(",", ""));
+            ledger.payEmi(operationId, amount);
             Thread.sleep(1000); // Simulate EMI processing time
         } catch (NumberFormatException ex) {
             logMessage("Invalid EMI amount format!");
         } catch (InterruptedException ex) {
             logMessage("EMI payment processing interrupted");
+        } finally {
+            // The field keeps showing the EMI, so next month's payment of the same amount needs a new ID
+            SwingUtilities.invokeLater(() -> {
+                if (emiOperationId == operationId) {
+                    emiOperationId = newOperationId();
+                }
+            });
         }
     }
 
-    private void applySavingsInterest() {
+    private void applySavingsInterest(long operationId) {
         try {
-            synchronized (this) {
-                double interest = savingsBalance * SAVINGS_INTEREST_RATE / 12;
-                savingsBalance += interest;
-                addTransaction("Interest Credited", interest, savingsBalance);
-                updateUI();
-                logMessage("Interest of $" + formatAmount(interest) + " credited successfully");
-            }
+            ledger.applyInterest(operationId);
             Thread.sleep(800); // Simulate interest processing time
         } catch (InterruptedException ex) {
             logMessage("Interest processing interrupted");
+        } finally {
+            SwingUtilities.invokeLater(() -> {
+                if (interestOperationId == operationId) {
+                    interestOperationId = newOperationId();
+                }
+            });
+        }
+    }
+
+    // Called by the ledger under its lock, so rows and messages are queued to the EDT in ledger order
+    private void onLedgerResult(Ledger.Result result) {
+        if (result.getWarning() != null) {
+            logMessage(result.getWarning());
+        }
+        switch (result.getStatus()) {
+            case APPLIED:
+                break;
+            case DUPLICATE:
+                logMessage("Duplicate request ignored: " + result.getType().name().toLowerCase() + " of $" + formatAmount(result.getAmount())
+                    + " was already applied, balance after it $" + formatAmount(result.getSavingsBalance())
+                    + (result.getOffset() > 0 ? " (journal offset " + result.getOffset() + ")" : ""));
+                return;
+            case INVALID_AMOUNT:
+                logMessage("Invalid amount!");
+                return;
+            case INVALID_LOAN_TYPE:
+                logMessage("Please select a loan type!");
+                return;
+            case INSUFFICIENT_BALANCE:
+                logMessage(result.getType() == Operation.Type.EMI ? "Insufficient balance to pay EMI!" : "Insufficient balance!");
+                return;
+            case EXISTING_LOAN:
+                logMessage("Existing loan must be cleared first!");
+                return;
+            case EXCEEDS_ELIGIBILITY:
+                logMessage("Loan amount exceeds eligibility ($" + formatAmount(accountSummary.getEligibility()) + ")!");
+                return;
+            case NO_LOAN:
+                logMessage("No active loan to pay EMI for!");
+                return;
+            case WRONG_EMI_AMOUNT:
+                logMessage("Please pay exact EMI amount: $" + formatAmount(result.getEmiAmount()));
+                return;
+            case LIMIT_REACHED:
+                logMessage((result.getType() == Operation.Type.LOAN ? "Loan request" : "Withdrawal") + " rejected: " + result.getDetail());
+                return;
+            case NOT_PERSISTED:
+                logMessage("Operation failed and was undone: " + result.getDetail());
+                return;
+        }
+
+        double amount = result.getAmount();
+        switch (result.getType()) {
+            case DEPOSIT:
+                addTransaction("Deposit", amount, result.getSavingsBalance());
+                logMessage("Deposited $" + formatAmount(amount) + " successfully");
+                break;
+            case WITHDRAWAL:
+                addTransaction("Withdrawal", amount, result.getSavingsBalance());
+                logMessage("Withdrawn $" + formatAmount(amount) + " successfully");
+                break;
+            case LOAN:
+                String emi = formatAmount(result.getEmiAmount());
+                SwingUtilities.invokeLater(() -> {
+                    emiPayField.setText(emi);
+                    emiPayField.setEditable(true);
+                    emiButton.setEnabled(true);
+                    loanTypeCombo.setSelectedIndex(0);
+                });
+                addTransaction(result.getLoanType() + " Loan Taken", amount, result.getSavingsBalance());
+                logMessage(result.getLoanType() + " Loan of $" + formatAmount(amount) + " approved. EMI: $" + emi + "/month");
+                break;
+            case EMI:
+                addTransaction("EMI Payment (" + result.getLoanType() + ")", amount, result.getSavingsBalance());
+                if (result.getLoanAmount() == 0) {
+                    SwingUtilities.invokeLater(() -> {
+                        emiPayField.setEditable(false);
+                        emiButton.setEnabled(false);
+                    });
+                    logMessage(result.getLoanType() + " Loan fully repaid!");
+                } else {
+                    logMessage("EMI of $" + formatAmount(amount) + " paid successfully");
+                }
+                break;
+            case INTEREST:
+                addTransaction("Interest Credited", amount, result.getSavingsBalance());
+                logMessage("Interest of $" + formatAmount(amount) + " credited successfully");
+                break;
         }
+        updateUI();
     }
 
     private void printBankStatement() {
@@ -494,9 +857,9 @@ public class BankingApp extends JFrame implements Printable {
         g2d.drawString("Bank Statement", 100, 30);
         g2d.setFont(new Font("Arial", Font.PLAIN, 12));
         g2d.drawString("Date: " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()), 100, 50);
-        g2d.drawString("Savings Balance: $" + formatAmount(savingsBalance), 100, 70);
-        g2d.drawString("Loan Amount: $" + formatAmount(loanAmount) + (currentLoanType != null ? " (" + currentLoanType + ")" : ""), 100, 90);
-        g2d.drawString("EMI: $" + formatAmount(emiAmount) + " (Remaining: " + emiTenure + " months)", 100, 110);
+        g2d.drawString(accountSummary.getBalanceText(), 100, 70);
+        g2d.drawString(accountSummary.getLoanText(), 100, 90);
+        g2d.drawString(accountSummary.getEmiText(), 100, 110);
 
         // Print transaction table
         g2d.drawString("Transaction History:", 100, 140);
@@ -517,58 +880,70 @@ public class BankingApp extends JFrame implements Printable {
         return PAGE_EXISTS;
     }
 
-    private double calculateEMI(double principal, double annualRate, int months) {
-        double monthlyRate = annualRate / 12;
-        return (principal * monthlyRate * Math.pow(1 + monthlyRate, months)) /
-               (Math.pow(1 + monthlyRate, months) - 1);
+    private String formatAmount(double amount) {
+        return new DecimalFormat("#,##0.00").format(amount);
     }
 
-    private double calculateLoanEligibility() {
-        return savingsBalance * 5;
+    private void addTransaction(String type, double amount, double balance) {
+        addTransactionRow(System.currentTimeMillis(), type, amount, balance);
     }
 
-    private String formatAmount(double amount) {
-        return new DecimalFormat("#,##0.00").format(amount);
+    private void addTransactionRow(long timestamp, String type, double amount, double balance) {
+        Vector<Object> row = newTransactionRow(timestamp, type, amount, balance);
+        SwingUtilities.invokeLater(() -> transactionModel.addRow(row));
     }
 
-    private void addTransaction(String type, double amount, double balance) {
-        String date = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
+    private Vector<Object> newTransactionRow(long timestamp, String type, double amount, double balance) {
+        String date = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(timestamp));
         Vector<Object> row = new Vector<>();
         row.add(date);
         row.add(type);
         row.add("$" + formatAmount(amount));
         row.add("$" + formatAmount(balance));
-        SwingUtilities.invokeLater(() -> transactionModel.addRow(row));
+        return row;
+    }
+
+    private static long newOperationId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0); // 0 means no operation ID
+        return id;
     }
 
+    // Labels are read from the summary, which the ledger's APPLY stage updates under the ledger lock
     private void updateUI() {
         SwingUtilities.invokeLater(() -> {
-            balanceLabel.setText("Savings Balance: $" + formatAmount(savingsBalance));
-            loanLabel.setText("Loan Amount: $" + formatAmount(loanAmount) + (currentLoanType != null ? " (" + currentLoanType + ")" : ""));
-            emiLabel.setText("EMI: $" + formatAmount(emiAmount) + " (Remaining: " + emiTenure + " months)");
-            eligibilityLabel.setText("Loan Eligibility: $" + formatAmount(calculateLoanEligibility()));
+            balanceLabel.setText(accountSummary.getBalanceText());
+            loanLabel.setText(accountSummary.getLoanText());
+            emiLabel.setText(accountSummary.getEmiText());
+            eligibilityLabel.setText(accountSummary.getEligibilityText());
         });
     }
 
     private void logMessage(String message) {
         String timestampedMessage = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()) + ": " + message;
-        SwingUtilities.invokeLater(() -> {
-            logArea.append(timestampedMessage + "\n");
-            logArea.setCaretPosition(logArea.getDocument().getLength());
-        });
+        SwingUtilities.invokeLater(() -> appendToLogArea(timestampedMessage + "\n"));
         executor.submit(() -> {
             try (BufferedWriter writer = new BufferedWriter(new FileWriter(logFile, true))) {
                 writer.write(timestampedMessage);
                 writer.newLine();
             } catch (IOException ex) {
-                SwingUtilities.invokeLater(() -> {
-                    logArea.append("Failed to write to log file: " + ex.getMessage() + "\n");
-                    logArea.setCaretPosition(logArea.getDocument().getLength());
-                });
+                SwingUtilities.invokeLater(() -> appendToLogArea("Failed to write to log file: " + ex.getMessage() + "\n"));
             }
         });
     }
 
+    // Must be called on the EDT
+    private void appendToLogArea(String text) {
+        if (logArea == null) {
+            pendingLog.append(text);
+            return;
+        }
+        logArea.append(text);
+        logArea.setCaretPosition(logArea.getDocument().getLength());
+    }
+
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
             new BankingApp().setVisible(true);
@@ -0,0 +1,59 @@
+package advancedbank;
+
+/*
+ * CSV Statement Writer: one row per transaction, same columns as the transaction history table
+ * Amounts are written as plain numbers so the file can be loaded into other tools
+ */
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+public class CsvStatementWriter implements StatementWriter {
+    static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final Writer out;
+    private final DecimalFormat amountFormat = new DecimalFormat("0.00", DecimalFormatSymbols.getInstance(Locale.ROOT));
+
+    public CsvStatementWriter(File file) throws IOException {
+        this.out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void begin(String accountId, double openingBalance) throws IOException {
+        out.write("Date,Type,Amount,Balance\n");
+    }
+
+    @Override
+    public void transaction(LedgerEvent event) throws IOException {
+        out.write(DATE_FORMAT.format(Instant.ofEpochMilli(event.getTimestamp())));
+        out.write(',');
+        out.write(quote(event.getDescription()));
+        out.write(',');
+        out.write(amountFormat.format(event.getAmount()));
+        out.write(',');
+        out.write(amountFormat.format(event.getBalance()));
+        out.write('\n');
+    }
+
+    @Override
+    public void end(LedgerState closing) throws IOException {
+        out.flush();
+    }
+
+    private static String quote(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
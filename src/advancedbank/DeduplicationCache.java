@@ -0,0 +1,218 @@
+package advancedbank;
+
+/*
+ * Deduplication Cache: remembers the result of every operation ID for a fixed time
+ * so a retried or double-submitted operation gets the original result instead of running twice
+ * Entries live in a ring of segments, each an open-addressing table of primitive arrays
+ * covering one slice of the time-to-live; when time moves past a slice the oldest segment
+ * is cleared and reused, so expiry costs nothing per entry and memory has a fixed upper bound
+ * A segment that fills up before its slice ends is rotated early, evicting the oldest IDs first
+ * Operation ID 0 is reserved for "no ID"
+ */
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class DeduplicationCache {
+    private static final double MAX_LOAD = 0.75;
+    private static final long NOT_FOUND = -1;
+
+    // What an applied operation did, returned for every later submission of its ID
+    public static final class Outcome {
+        private final long offset; // Journal offset, 0 when not journalled
+        private final double amount;
+        private final double savingsBalance; // Balance right after the operation
+
+        Outcome(long offset, double amount, double savingsBalance) {
+            this.offset = offset;
+            this.amount = amount;
+            this.savingsBalance = savingsBalance;
+        }
+
+        public long getOffset() { return offset; }
+        public double getAmount() { return amount; }
+        public double getSavingsBalance() { return savingsBalance; }
+    }
+
+    private final long sliceMillis;
+    private final int segmentCapacity; // Slots per segment, a power of two
+    private final int maxEntriesPerSegment;
+    private final long[][] keys;
+    private final long[][] offsets;
+    private final double[][] amounts;
+    private final double[][] balances;
+    private final int[] sizes;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int current = 0;
+    private long currentSliceStart = Long.MIN_VALUE;
+    private final LongAdder hits = new LongAdder(); // Updated under the read lock
+    private final LongAdder misses = new LongAdder();
+    private long evictions;
+
+    // Holds at most maxEntries IDs (rounded down to a multiple of segments), each segment a
+    // 1/segments share; a slot takes 32 bytes and a segment's table is sized for that share
+    // at 0.75 load rounded up to a power of two, i.e. 43 to 85 bytes per entry, allocated as segments fill
+    public DeduplicationCache(long ttlMillis, int segments, int maxEntries) {
+        if (maxEntries < segments) {
+            throw new IllegalArgumentException("Need at least one entry per segment: " + maxEntries + " < " + segments);
+        }
+        this.sliceMillis = Math.max(1, ttlMillis / segments);
+        this.maxEntriesPerSegment = maxEntries / segments;
+        int slots = Math.max(16, (int) Math.ceil(maxEntriesPerSegment / MAX_LOAD));
+        this.segmentCapacity = Integer.highestOneBit(slots - 1) << 1;
+        this.keys = new long[segments][];
+        this.offsets = new long[segments][];
+        this.amounts = new double[segments][];
+        this.balances = new double[segments][];
+        this.sizes = new int[segments];
+    }
+
+    // Returns what the operation with this ID did, or null if it is not known
+    public Outcome get(long operationId, long now) {
+        lock.readLock().lock();
+        try {
+            long found = find(operationId, now);
+            if (found == NOT_FOUND) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return outcome(found);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Stores the outcome unless the ID is already known; returns the existing outcome or null
+    public Outcome putIfAbsent(long operationId, long offset, double amount, double savingsBalance, long now) {
+        if (operationId == 0) {
+            throw new IllegalArgumentException("Operation ID 0 is reserved");
+        }
+        lock.writeLock().lock();
+        try {
+            advance(now);
+            long existing = find(operationId, now);
+            if (existing != NOT_FOUND) {
+                return outcome(existing);
+            }
+            if (sizes[current] >= maxEntriesPerSegment) {
+                rotate(); // Full before its time slice ended
+                currentSliceStart = now;
+            }
+            if (keys[current] == null) {
+                keys[current] = new long[segmentCapacity];
+                offsets[current] = new long[segmentCapacity];
+                amounts[current] = new double[segmentCapacity];
+                balances[current] = new double[segmentCapacity];
+            }
+            long[] segmentKeys = keys[current];
+            int mask = segmentCapacity - 1;
+            int slot = hash(operationId) & mask;
+            while (segmentKeys[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            segmentKeys[slot] = operationId;
+            offsets[current][slot] = offset;
+            amounts[current][slot] = amount;
+            balances[current][slot] = savingsBalance;
+            sizes[current]++;
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Newest segment first; segments whose slice is older than the time-to-live are skipped
+    // Returns the segment and slot of the ID packed into one long, or NOT_FOUND
+    private long find(long operationId, long now) {
+        int segments = keys.length;
+        int mask = segmentCapacity - 1;
+        int start = hash(operationId) & mask;
+        for (int age = 0; age < segments; age++) {
+            if (currentSliceStart != Long.MIN_VALUE && now - currentSliceStart >= (segments - age) * sliceMillis) {
+                break; // This and all older segments have expired
+            }
+            int s = Math.floorMod(current - age, segments);
+            long[] segmentKeys = keys[s];
+            if (segmentKeys == null) {
+                continue;
+            }
+            for (int slot = start; segmentKeys[slot] != 0; slot = (slot + 1) & mask) {
+                if (segmentKeys[slot] == operationId) {
+                    return (long) s << 32 | slot;
+                }
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    private Outcome outcome(long found) {
+        int s = (int) (found >>> 32);
+        int slot = (int) found;
+        return new Outcome(offsets[s][slot], amounts[s][slot], balances[s][slot]);
+    }
+
+    private void advance(long now) {
+        if (currentSliceStart == Long.MIN_VALUE) {
+            currentSliceStart = now;
+            return;
+        }
+        if (now - currentSliceStart >= keys.length * sliceMillis) {
+            // Idle for longer than the time-to-live: everything has expired
+            for (int s = 0; s < keys.length; s++) {
+                clear(s);
+            }
+            currentSliceStart = now;
+            return;
+        }
+        while (now - currentSliceStart >= sliceMillis) {
+            rotate();
+            currentSliceStart += sliceMillis;
+        }
+    }
+
+    private void rotate() {
+        current = (current + 1) % keys.length;
+        clear(current);
+    }
+
+    private void clear(int segment) {
+        if (keys[segment] != null && sizes[segment] > 0) {
+            evictions += sizes[segment];
+            Arrays.fill(keys[segment], 0);
+        }
+        sizes[segment] = 0;
+    }
+
+    // Spreads sequential and random IDs evenly over the table
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            int total = 0;
+            for (int size : sizes) {
+                total += size;
+            }
+            return total;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public String describeStats() {
+        lock.readLock().lock();
+        try {
+            return "Deduplication cache: " + size() + " IDs held, " + hits.sum() + " duplicates caught, "
+                + misses.sum() + " misses, " + evictions + " expired";
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package advancedbank;
+
+/*
+ * End of Day Report: totals and balance reconciliation from the ledger journal
+ * Streams the journal once; lines are partitioned by account and parsed and
+ * accumulated by one worker per partition, and the partial totals are merged at the end
+ * Totals: deposits, withdrawals, loans disbursed, EMIs collected and interest paid,
+ * per day and per day and loan type
+ * Reconciliation: for every account and day, opening balance + movements must equal closing balance
+ * Memory is bounded by the number of accounts and days, not by the size of the history
+ *
+ * Usage: java advancedbank.EndOfDayReport [journal file] [yyyy-MM-dd] [partitions]
+ */
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class EndOfDayReport {
+    private static final int BATCH_SIZE = 512;
+    private static final int QUEUE_BATCHES = 8; // Per partition, bounds the lines in flight
+    private static final int MAX_REPORTED_MISMATCHES = 1000;
+    private static final double TOLERANCE = 0.005; // Half a cent
+    private static final List<String> END_OF_STREAM = Collections.emptyList();
+    private static final String NO_LOAN = "None";
+
+    private final int partitions;
+    private final LocalDate reportDay; // null for every day in the journal
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    public EndOfDayReport(int partitions, LocalDate reportDay) {
+        this.partitions = partitions;
+        this.reportDay = reportDay;
+    }
+
+    // Daily movement totals for one day, or for one day and loan type
+    public static class Totals {
+        private double deposits, withdrawals, loansDisbursed, emisCollected, interestPaid;
+        private long transactions;
+
+        void add(LedgerEvent event) {
+            switch (event.getType()) {
+                case DEPOSIT: deposits += event.getAmount(); break;
+                case WITHDRAWAL: withdrawals += event.getAmount(); break;
+                case LOAN: loansDisbursed += event.getAmount(); break;
+                case EMI: emisCollected += event.getAmount(); break;
+                case INTEREST: interestPaid += event.getAmount(); break;
+            }
+            transactions++;
+        }
+
+        void merge(Totals other) {
+            deposits += other.deposits;
+            withdrawals += other.withdrawals;
+            loansDisbursed += other.loansDisbursed;
+            emisCollected += other.emisCollected;
+            interestPaid += other.interestPaid;
+            transactions += other.transactions;
+        }
+
+        public double getDeposits() { return deposits; }
+        public double getWithdrawals() { return withdrawals; }
+        public double getLoansDisbursed() { return loansDisbursed; }
+        public double getEmisCollected() { return emisCollected; }
+        public double getInterestPaid() { return interestPaid; }
+        public long getTransactions() { return transactions; }
+    }
+
+    // An account whose closing balance does not match opening balance + movements for a day
+    public static class Mismatch {
+        private final String accountId;
+        private final LocalDate day;
+        private final double opening, movements, closing;
+        private final long lastOffset;
+
+        Mismatch(String accountId, LocalDate day, double opening, double movements, double closing, long lastOffset) {
+            this.accountId = accountId;
+            this.day = day;
+            this.opening = opening;
+            this.movements = movements;
+            this.closing = closing;
+            this.lastOffset = lastOffset;
+        }
+
+        @Override
+        public String toString() {
+            return accountId + " on " + day + ": opening " + format(opening) + " + movements " + format(movements)
+                + " = " + format(opening + movements) + " but closing is " + format(closing) + " (last offset " + lastOffset + ")";
+        }
+    }
+
+    // Merged output of all partitions
+    public static class Result {
+        private final SortedMap<LocalDate, Totals> byDay = new TreeMap<>();
+        private final SortedMap<LocalDate, SortedMap<String, Totals>> byDayAndLoanType = new TreeMap<>();
+        private final List<Mismatch> mismatches = new ArrayList<>();
+        private long mismatchCount;
+        private long accountDaysReconciled;
+        private long accounts;
+        private long events;
+
+        void merge(Partition partition) {
+            for (Map.Entry<LocalDate, Totals> entry : partition.byDay.entrySet()) {
+                byDay.computeIfAbsent(entry.getKey(), d -> new Totals()).merge(entry.getValue());
+            }
+            for (Map.Entry<LocalDate, Map<String, Totals>> day : partition.byDayAndLoanType.entrySet()) {
+                SortedMap<String, Totals> merged = byDayAndLoanType.computeIfAbsent(day.getKey(), d -> new TreeMap<>());
+                for (Map.Entry<String, Totals> entry : day.getValue().entrySet()) {
+                    merged.computeIfAbsent(entry.getKey(), t -> new Totals()).merge(entry.getValue());
+                }
+            }
+            for (Mismatch mismatch : partition.mismatches) {
+                if (mismatches.size() < MAX_REPORTED_MISMATCHES) {
+                    mismatches.add(mismatch);
+                }
+            }
+            mismatchCount += partition.mismatchCount;
+            accountDaysReconciled += partition.accountDaysReconciled;
+            accounts += partition.cursors.size();
+            events += partition.events;
+        }
+
+        public SortedMap<LocalDate, Totals> getTotalsByDay() { return byDay; }
+        public SortedMap<LocalDate, SortedMap<String, Totals>> getTotalsByDayAndLoanType() { return byDayAndLoanType; }
+        public List<Mismatch> getMismatches() { return mismatches; }
+        public long getMismatchCount() { return mismatchCount; }
+        public long getAccountDaysReconciled() { return accountDaysReconciled; }
+        public long getAccounts() { return accounts; }
+        public long getEvents() { return events; }
+    }
+
+    // Running reconciliation state of one account
+    private static class AccountCursor {
+        double balance = BankingApp.OPENING_BALANCE;
+        LocalDate day;
+        double dayOpening;
+        double dayMovements;
+        long lastOffset;
+    }
+
+    // Accumulators owned by a single worker thread
+    private class Partition {
+        final BlockingQueue<List<String>> queue = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+        final Map<String, AccountCursor> cursors = new HashMap<>();
+        final Map<LocalDate, Totals> byDay = new HashMap<>();
+        final Map<LocalDate, Map<String, Totals>> byDayAndLoanType = new HashMap<>();
+        final List<Mismatch> mismatches = new ArrayList<>();
+        long mismatchCount;
+        long accountDaysReconciled;
+        long events;
+        LocalDate cachedDay; // Day of the previous event, reused while timestamps stay within it
+        long cachedDayStart, cachedDayEnd;
+
+        Partition consume() throws InterruptedException {
+            RuntimeException failure = null;
+            List<String> batch;
+            while ((batch = queue.take()) != END_OF_STREAM) {
+                if (failure != null) {
+                    continue; // Keep draining so the reader never blocks on a dead partition
+                }
+                try {
+                    for (String line : batch) {
+                        accumulate(LedgerEvent.parse(line));
+                    }
+                } catch (RuntimeException ex) {
+                    failure = ex;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            for (Map.Entry<String, AccountCursor> entry : cursors.entrySet()) {
+                closeDay(entry.getKey(), entry.getValue());
+            }
+            return this;
+        }
+
+        void accumulate(LedgerEvent event) {
+            events++;
+            LocalDate day = dayOf(event.getTimestamp());
+            AccountCursor cursor = cursors.computeIfAbsent(event.getAccountId(), id -> new AccountCursor());
+            if (!day.equals(cursor.day)) {
+                closeDay(event.getAccountId(), cursor);
+                cursor.day = day;
+                cursor.dayOpening = cursor.balance;
+                cursor.dayMovements = 0;
+            }
+            cursor.dayMovements += savingsMovement(event);
+            cursor.balance = event.getBalance();
+            cursor.lastOffset = event.getOffset();
+
+            if (reportDay == null || reportDay.equals(day)) {
+                byDay.computeIfAbsent(day, d -> new Totals()).add(event);
+                byDayAndLoanType.computeIfAbsent(day, d -> new HashMap<>())
+                    .computeIfAbsent(event.getLoanType() != null ? event.getLoanType() : NO_LOAN, t -> new Totals())
+                    .add(event);
+            }
+        }
+
+        LocalDate dayOf(long timestamp) {
+            if (cachedDay == null || timestamp < cachedDayStart || timestamp >= cachedDayEnd) {
+                cachedDay = Instant.ofEpochMilli(timestamp).atZone(zone).toLocalDate();
+                cachedDayStart = cachedDay.atStartOfDay(zone).toInstant().toEpochMilli();
+                cachedDayEnd = cachedDay.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            }
+            return cachedDay;
+        }
+
+        void closeDay(String accountId, AccountCursor cursor) {
+            if (cursor.day == null || (reportDay != null && !reportDay.equals(cursor.day))) {
+                return;
+            }
+            accountDaysReconciled++;
+            if (Math.abs(cursor.dayOpening + cursor.dayMovements - cursor.balance) > TOLERANCE) {
+                mismatchCount++;
+                if (mismatches.size() < MAX_REPORTED_MISMATCHES) {
+                    mismatches.add(new Mismatch(accountId, cursor.day, cursor.dayOpening, cursor.dayMovements, cursor.balance, cursor.lastOffset));
+                }
+            }
+        }
+    }
+
+    // Effect of an event on the savings balance; loans are disbursed outside the savings account
+    private static double savingsMovement(LedgerEvent event) {
+        switch (event.getType()) {
+            case DEPOSIT:
+            case INTEREST:
+                return event.getAmount();
+            case WITHDRAWAL:
+            case EMI:
+                return -event.getAmount();
+            default:
+                return 0;
+        }
+    }
+
+    public Result run(File journalFile) throws IOException, InterruptedException {
+        List<Partition> parts = new ArrayList<>();
+        List<List<String>> batches = new ArrayList<>();
+        for (int i = 0; i < partitions; i++) {
+            parts.add(new Partition());
+            batches.add(new ArrayList<>(BATCH_SIZE));
+        }
+        ExecutorService workers = Executors.newFixedThreadPool(partitions);
+        try {
+            List<Future<Partition>> futures = new ArrayList<>();
+            for (Partition partition : parts) {
+                futures.add(workers.submit(partition::consume));
+            }
+
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    int p = Math.floorMod(LedgerEvent.parseAccountId(line).hashCode(), partitions);
+                    List<String> batch = batches.get(p);
+                    batch.add(line);
+                    if (batch.size() == BATCH_SIZE) {
+                        parts.get(p).queue.put(batch);
+                        batches.set(p, new ArrayList<>(BATCH_SIZE));
+                    }
+                }
+            } finally {
+                for (int p = 0; p < partitions; p++) {
+                    parts.get(p).queue.put(batches.get(p));
+                    parts.get(p).queue.put(END_OF_STREAM);
+                }
+            }
+
+            Result result = new Result();
+            for (Future<Partition> future : futures) {
+                try {
+                    result.merge(future.get());
+                } catch (ExecutionException ex) {
+                    throw new IOException("End of day aggregation failed: " + ex.getCause().getMessage(), ex.getCause());
+                }
+            }
+            return result;
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private static String format(double amount) {
+        return new DecimalFormat("#,##0.00").format(amount);
+    }
+
+    public static void print(Result result, PrintStream out) {
+        out.println("End of Day Report");
+        out.println(result.getEvents() + " events, " + result.getAccounts() + " accounts");
+        out.println();
+        out.println(String.format("%-12s %-10s %14s %14s %14s %14s %14s %8s",
+            "Date", "Loan Type", "Deposits", "Withdrawals", "Loans", "EMIs", "Interest", "Count"));
+        for (Map.Entry<LocalDate, Totals> day : result.getTotalsByDay().entrySet()) {
+            printRow(out, day.getKey().toString(), "All", day.getValue());
+            for (Map.Entry<String, Totals> type : result.getTotalsByDayAndLoanType().get(day.getKey()).entrySet()) {
+                printRow(out, "", type.getKey(), type.getValue());
+            }
+        }
+        out.println();
+        out.println("Reconciliation: " + result.getAccountDaysReconciled() + " account-days checked, "
+            + result.getMismatchCount() + " mismatches");
+        for (Mismatch mismatch : result.getMismatches()) {
+            out.println("  MISMATCH " + mismatch);
+        }
+        if (result.getMismatchCount() > result.getMismatches().size()) {
+            out.println("  ... " + (result.getMismatchCount() - result.getMismatches().size()) + " more");
+        }
+    }
+
+    private static void printRow(PrintStream out, String date, String loanType, Totals totals) {
+        out.println(String.format("%-12s %-10s %14s %14s %14s %14s %14s %8d", date, loanType,
+            format(totals.getDeposits()), format(totals.getWithdrawals()), format(totals.getLoansDisbursed()),
+            format(totals.getEmisCollected()), format(totals.getInterestPaid()), totals.getTransactions()));
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        File journalFile = new File(args.length > 0 ? args[0] : System.getProperty(BankingApp.JOURNAL_PROPERTY, "ledger_journal.txt"));
+        LocalDate day = args.length > 1 && !args[1].isEmpty() ? LocalDate.parse(args[1]) : null;
+        int partitions = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        long start = System.nanoTime();
+        Result result = new EndOfDayReport(partitions, day).run(journalFile);
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        print(result, System.out);
+        System.out.println();
+        System.out.println("Processed in " + elapsedMillis + " ms using " + partitions + " partitions");
+        if (result.getMismatchCount() > 0) {
+            System.exit(2);
+        }
+    }
+}
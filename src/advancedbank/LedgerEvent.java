@@ -0,0 +1,116 @@
+package advancedbank;
+
+/*
+ * Ledger Event: one committed change to an account
+ * Stored one per line in the ledger journal and streamed to followers
+ * Carries the account state after the operation so a replica can apply it
+ * without re-running any of the business rules
+ */
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+public class LedgerEvent {
+    public enum Type { DEPOSIT, WITHDRAWAL, LOAN, EMI, INTEREST }
+
+    private static final String SEPARATOR = "|";
+    private static final String NO_LOAN = "-";
+
+    private final long offset;
+    private final long timestamp;
+    private final String accountId;
+    private final Type type;
+    private final double amount;
+    private final double balance;
+    private final double loanAmount;
+    private final double emiAmount;
+    private final int emiTenure;
+    private final String loanType; // Loan taken or paid for LOAN and EMI; otherwise the loan active afterwards, null when there is none
+    private final long operationId; // Client-supplied ID for deduplication, 0 when none
+
+    public LedgerEvent(long offset, long timestamp, String accountId, Type type, double amount,
+                       double balance, double loanAmount, double emiAmount, int emiTenure, String loanType, long operationId) {
+        this.offset = offset;
+        this.timestamp = timestamp;
+        this.accountId = accountId;
+        this.type = type;
+        this.amount = amount;
+        this.balance = balance;
+        this.loanAmount = loanAmount;
+        this.emiAmount = emiAmount;
+        this.emiTenure = emiTenure;
+        this.loanType = loanType;
+        this.operationId = operationId;
+    }
+
+    public long getOffset() { return offset; }
+    public long getTimestamp() { return timestamp; }
+    public String getAccountId() { return accountId; }
+    public Type getType() { return type; }
+    public double getAmount() { return amount; }
+    public double getBalance() { return balance; }
+    public double getLoanAmount() { return loanAmount; }
+    public double getEmiAmount() { return emiAmount; }
+    public int getEmiTenure() { return emiTenure; }
+    public String getLoanType() { return loanType; }
+    public long getOperationId() { return operationId; }
+
+    // Same wording as the rows of the transaction history table
+    public String getDescription() {
+        switch (type) {
+            case DEPOSIT: return "Deposit";
+            case WITHDRAWAL: return "Withdrawal";
+            case LOAN: return loanType + " Loan Taken";
+            case EMI: return "EMI Payment (" + loanType + ")";
+            default: return "Interest Credited";
+        }
+    }
+
+    public String serialize() {
+        return offset + SEPARATOR + timestamp + SEPARATOR + accountId + SEPARATOR + type + SEPARATOR
+            + amount + SEPARATOR + balance + SEPARATOR + loanAmount + SEPARATOR + emiAmount + SEPARATOR
+            + emiTenure + SEPARATOR + (loanType != null ? loanType : NO_LOAN) + SEPARATOR + operationId;
+    }
+
+    // CRC-32 of the serialized event; a leader and a follower compare it to check that their journals agree
+    public long checksum() {
+        CRC32 crc = new CRC32();
+        crc.update(serialize().getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    public static LedgerEvent parse(String line) {
+        String[] parts = line.split("\\|");
+        if (parts.length < 10) {
+            throw new IllegalArgumentException("Malformed ledger event: " + line);
+        }
+        return new LedgerEvent(
+            Long.parseLong(parts[0]),
+            Long.parseLong(parts[1]),
+            parts[2],
+            Type.valueOf(parts[3]),
+            Double.parseDouble(parts[4]),
+            Double.parseDouble(parts[5]),
+            Double.parseDouble(parts[6]),
+            Double.parseDouble(parts[7]),
+            Integer.parseInt(parts[8]),
+            parts[9].equals(NO_LOAN) ? null : parts[9],
+            parts.length > 10 ? Long.parseLong(parts[10]) : 0 // Journals written before operation IDs
+        );
+    }
+
+    // Account of a serialized event, without parsing the rest of the line
+    public static String parseAccountId(String line) {
+        int first = line.indexOf('|');
+        int second = line.indexOf('|', first + 1);
+        int third = line.indexOf('|', second + 1);
+        if (first < 0 || second < 0 || third < 0) {
+            throw new IllegalArgumentException("Malformed ledger event: " + line);
+        }
+        return line.substring(second + 1, third);
+    }
+
+    @Override
+    public String toString() {
+        return serialize();
+    }
+}
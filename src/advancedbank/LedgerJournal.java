@@ -0,0 +1,251 @@
+package advancedbank;
+
+/*
+ * Ledger Journal: append-only file of ledger events, one per line
+ * Offsets start at 1 and increase by one per event
+ * Listeners are notified under the journal lock, in offset order
+ * A torn last line left behind by a crash is cut off when the journal is opened
+ * An append that fails is cut off the file again and leaves nothing in the buffer, so the next
+ * append gets the same offset; if the file cannot be reopened every later append fails
+ * Local appends are forced to disk (fsync) before they return, unless -Dbank.journal.fsync=false;
+ * replicated appends are only flushed, and the follower calls sync() before acknowledging them
+ * Opening the journal and findLast() read backwards from the end, so neither scans the whole file
+ */
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+public class LedgerJournal implements Closeable {
+    public static final String FSYNC_PROPERTY = "bank.journal.fsync";
+    private static final int TAIL_CHUNK = 64 * 1024;
+
+    public interface Listener {
+        void onAppend(LedgerEvent event);
+    }
+
+    private final File file;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final boolean fsync;
+    private FileOutputStream fileOut;
+    private BufferedWriter writer; // null after a failed append could not reopen the file
+    private long committedLength; // File length up to the end of the last complete append
+    private long lastOffset = 0;
+    private LedgerEvent lastEvent; // null while the journal is empty
+
+    public LedgerJournal(File file) throws IOException {
+        this(file, Boolean.parseBoolean(System.getProperty(FSYNC_PROPERTY, "true")));
+    }
+
+    public LedgerJournal(File file, boolean fsync) throws IOException {
+        this.file = file;
+        this.fsync = fsync;
+        if (!file.exists()) {
+            file.createNewFile();
+        }
+        truncateTornTail();
+        lastEvent = readLast(event -> true); // Only the last line, so opening a long journal stays fast
+        lastOffset = lastEvent != null ? lastEvent.getOffset() : 0;
+        committedLength = file.length();
+        open();
+    }
+
+    private void open() throws IOException {
+        fileOut = new FileOutputStream(file, true);
+        writer = new BufferedWriter(new OutputStreamWriter(fileOut, StandardCharsets.UTF_8));
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public synchronized long getLastOffset() {
+        return lastOffset;
+    }
+
+    public synchronized LedgerEvent getLastEvent() {
+        return lastEvent;
+    }
+
+    // Assigns the next offset to a new event and forces it to disk (unless fsync is off) before notifying listeners
+    public synchronized LedgerEvent append(String accountId, LedgerEvent.Type type, double amount, double balance,
+                                           double loanAmount, double emiAmount, int emiTenure, String loanType,
+                                           long operationId) throws IOException {
+        LedgerEvent event = new LedgerEvent(lastOffset + 1, System.currentTimeMillis(), accountId, type, amount,
+            balance, loanAmount, emiAmount, emiTenure, loanType, operationId);
+        write(event, fsync);
+        return event;
+    }
+
+    // Appends an event received from a leader, keeping the leader's offset; flushed but not synced, see sync()
+    public synchronized void appendReplicated(LedgerEvent event) throws IOException {
+        if (event.getOffset() != lastOffset + 1) {
+            throw new IOException("Out of order event: expected offset " + (lastOffset + 1) + " but got " + event.getOffset());
+        }
+        write(event, false);
+    }
+
+    // Forces every appended event to disk; a follower calls this once per batch before acknowledging it
+    public synchronized void sync() throws IOException {
+        checkWritable();
+        writer.flush();
+        if (fsync) {
+            fileOut.getFD().sync();
+        }
+    }
+
+    private void write(LedgerEvent event, boolean sync) throws IOException {
+        checkWritable();
+        try {
+            writer.write(event.serialize());
+            writer.newLine();
+            writer.flush();
+            if (sync) {
+                fileOut.getFD().sync();
+            }
+            committedLength = fileOut.getChannel().size();
+        } catch (IOException ex) {
+            discardFailedAppend();
+            throw ex;
+        }
+        lastOffset = event.getOffset();
+        lastEvent = event;
+        for (Listener listener : listeners) {
+            listener.onAppend(event);
+        }
+    }
+
+    // Drops the buffered rest of a failed append, cuts off whatever part of it reached the file and reopens it
+    private void discardFailedAppend() {
+        try {
+            fileOut.close(); // Closes the file without flushing the writer's buffer
+        } catch (IOException ex) {
+            // Reopened below
+        }
+        writer = null;
+        try {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                if (raf.length() > committedLength) {
+                    raf.setLength(committedLength);
+                }
+            }
+            open();
+        } catch (IOException ex) {
+            System.err.println("Ledger journal " + file + " cannot be reopened, no further events will be written: " + ex.getMessage());
+        }
+    }
+
+    private void checkWritable() throws IOException {
+        if (writer == null) {
+            throw new IOException("Ledger journal " + file + " is unavailable after an earlier write failure");
+        }
+    }
+
+    // Streams events with fromOffset <= offset <= toOffset from disk
+    public void replay(long fromOffset, long toOffset, Consumer<LedgerEvent> consumer) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                LedgerEvent event = LedgerEvent.parse(line);
+                if (event.getOffset() > toOffset) {
+                    break;
+                }
+                if (event.getOffset() >= fromOffset) {
+                    consumer.accept(event);
+                }
+            }
+        }
+    }
+
+    // Newest event of the account, or null when it has none
+    public LedgerEvent findLast(String accountId) throws IOException {
+        return readLast(event -> event.getAccountId().equals(accountId));
+    }
+
+    // Newest event that matches, or null when none does; reads the file backwards in chunks
+    private LedgerEvent readLast(Predicate<LedgerEvent> matches) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long position = raf.length();
+            byte[] carry = new byte[0]; // Start of a line whose end was in the chunk read before
+            while (position > 0) {
+                int read = (int) Math.min(TAIL_CHUNK, position);
+                position -= read;
+                byte[] buffer = new byte[read + carry.length];
+                raf.seek(position);
+                raf.readFully(buffer, 0, read);
+                System.arraycopy(carry, 0, buffer, read, carry.length);
+                int lineEnd = buffer.length;
+                for (int i = buffer.length - 1; i >= 0; i--) {
+                    if (buffer[i] == '\n') {
+                        LedgerEvent event = parseLine(buffer, i + 1, lineEnd);
+                        if (event != null && matches.test(event)) {
+                            return event;
+                        }
+                        lineEnd = i;
+                    }
+                }
+                carry = Arrays.copyOf(buffer, lineEnd);
+            }
+            LedgerEvent event = parseLine(carry, 0, carry.length); // First line of the file
+            return event != null && matches.test(event) ? event : null;
+        }
+    }
+
+    private static LedgerEvent parseLine(byte[] buffer, int start, int end) {
+        if (end > start && buffer[end - 1] == '\r') {
+            end--;
+        }
+        return end > start ? LedgerEvent.parse(new String(buffer, start, end - start, StandardCharsets.UTF_8)) : null;
+    }
+
+    // Streams every event of a journal file without opening it for writing
+    public static void forEach(File file, Consumer<LedgerEvent> consumer) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    consumer.accept(LedgerEvent.parse(line));
+                }
+            }
+        }
+    }
+
+    private void truncateTornTail() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long length = raf.length();
+            long end = length;
+            while (end > 0) {
+                raf.seek(end - 1);
+                if (raf.read() == '\n') {
+                    break;
+                }
+                end--;
+            }
+            if (end != length) {
+                raf.setLength(end);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer == null) {
+            return;
+        }
+        writer.close();
+    }
+}
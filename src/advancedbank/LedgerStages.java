@@ -0,0 +1,150 @@
+package advancedbank;
+
+/*
+ * Ledger Stages: the advanced banking account and pipeline on the shared bankcore.Ledger
+ * Savings interest, Personal/Home/Car loans capped at 5x the balance, and the interceptors
+ * for duplicate protection, velocity limits, the cached account summary, the journal with
+ * replication, and operation metrics
+ */
+import bankcore.Account;
+import bankcore.EligibilityRule;
+import bankcore.Interceptor;
+import bankcore.Ledger;
+import bankcore.LoanProduct;
+import bankcore.Operation;
+import bankcore.OperationMetrics;
+
+import java.io.IOException;
+
+public class LedgerStages {
+    public static final double SAVINGS_INTEREST_RATE = 0.04; // 4% annual interest for savings
+    public static final double PERSONAL_LOAN_RATE = 0.10; // 10% for personal loan
+    public static final double HOME_LOAN_RATE = 0.07; // 7% for home loan
+    public static final double CAR_LOAN_RATE = 0.08; // 8% for car loan
+    public static final int PERSONAL_LOAN_TENURE = 12; // 12 months
+    public static final int HOME_LOAN_TENURE = 60; // 60 months
+    public static final int CAR_LOAN_TENURE = 36; // 36 months
+    public static final EligibilityRule LOAN_ELIGIBILITY = LedgerStages::calculateLoanEligibility; // For the account and its summary
+
+    public static Account newAccount(double openingBalance) {
+        return new Account(openingBalance, SAVINGS_INTEREST_RATE, LOAN_ELIGIBILITY,
+            new LoanProduct("Personal", PERSONAL_LOAN_RATE, PERSONAL_LOAN_TENURE),
+            new LoanProduct("Home", HOME_LOAN_RATE, HOME_LOAN_TENURE),
+            new LoanProduct("Car", CAR_LOAN_RATE, CAR_LOAN_TENURE));
+    }
+
+    // 5x the savings balance; a second loan is refused as EXISTING_LOAN before eligibility is checked
+    public static double calculateLoanEligibility(double savingsBalance, double loanAmount, String currentLoanType) {
+        return savingsBalance * 5;
+    }
+
+    // A ledger with every stage; journalStage may be null when nothing is persisted
+    // Only velocity limits and metrics are optional; the rest keep the account correct and durable
+    public static Ledger newLedger(String accountId, double openingBalance, JournalStage journalStage, VelocityLimiter velocityLimiter,
+                                   DeduplicationCache operationCache, AccountSummary summary, OperationMetrics metrics) {
+        Ledger ledger = new Ledger(accountId, newAccount(openingBalance));
+        ledger.addInterceptor(Ledger.Stage.VALIDATION, "deduplication", deduplication(operationCache));
+        ledger.addOptionalInterceptor(Ledger.Stage.LIMITS, "velocity", velocityLimits(velocityLimiter, accountId));
+        ledger.addInterceptor(Ledger.Stage.APPLY, "summary", summary(summary));
+        if (journalStage != null) {
+            ledger.addInterceptor(Ledger.Stage.JOURNAL, "journal", journalStage);
+        }
+        ledger.addInterceptor(Ledger.Stage.JOURNAL, "operation-ids", operationIds(operationCache)); // After the journal, to store its offset
+        ledger.addOptionalInterceptor(Ledger.Stage.NOTIFY, "metrics", metrics);
+        summary.update(openingBalance, 0, null, 0, 0);
+        return ledger;
+    }
+
+    // VALIDATION: rejects an operation ID that was already applied with the original outcome; ID 0 opts out
+    public static Interceptor deduplication(DeduplicationCache operationCache) {
+        return (operation, account) -> {
+            if (operation.getOperationId() == 0) {
+                return;
+            }
+            DeduplicationCache.Outcome original = operationCache.get(operation.getOperationId(), System.currentTimeMillis());
+            if (original != null) {
+                operation.rejectAsDuplicate(original.getOffset(), original.getAmount(), original.getSavingsBalance());
+            }
+        };
+    }
+
+    // JOURNAL: remembers the ID of an applied operation with its journal offset, amount and resulting balance
+    public static Interceptor operationIds(DeduplicationCache operationCache) {
+        return (operation, account) -> {
+            if (operation.getOperationId() != 0) {
+                operationCache.putIfAbsent(operation.getOperationId(), operation.getOffset(), operation.getAmount(),
+                    account.getSavingsBalance(), System.currentTimeMillis());
+            }
+        };
+    }
+
+    // LIMITS: withdrawals and loans, checked only once the account rules have passed so a refused operation uses no quota
+    public static Interceptor velocityLimits(VelocityLimiter velocityLimiter, String accountId) {
+        return (operation, account) -> {
+            String product;
+            if (operation.getType() == Operation.Type.WITHDRAWAL) {
+                product = VelocityLimiter.WITHDRAWAL;
+            } else if (operation.getType() == Operation.Type.LOAN) {
+                product = operation.getLoanType();
+            } else {
+                return;
+            }
+            String rejection = velocityLimiter.tryAcquire(accountId, product, operation.getRequestedAmount());
+            if (rejection != null) {
+                operation.reject(Ledger.Status.LIMIT_REACHED, rejection);
+            }
+        };
+    }
+
+    // APPLY: keeps the cached labels and eligibility in step with the account
+    public static Interceptor summary(AccountSummary summary) {
+        return (operation, account) -> summary.update(account.getSavingsBalance(), account.getLoanAmount(),
+            account.getCurrentLoanType(), account.getEmiAmount(), account.getEmiTenure());
+    }
+
+    // JOURNAL: appends the new account state and, in sync commit mode, waits for the followers
+    // An operation that cannot be appended fails and is undone; a replication timeout only warns,
+    // since the operation is already durable on the leader
+    public static class JournalStage implements Interceptor {
+        private static final LedgerEvent.Type[] EVENT_TYPES = new LedgerEvent.Type[Operation.Type.values().length];
+        static {
+            for (Operation.Type type : Operation.Type.values()) {
+                EVENT_TYPES[type.ordinal()] = LedgerEvent.Type.valueOf(type.name());
+            }
+        }
+
+        private final LedgerJournal journal;
+        private final String accountId;
+        private volatile ReplicationLeader replicationLeader;
+
+        public JournalStage(LedgerJournal journal, String accountId) {
+            this.journal = journal;
+            this.accountId = accountId;
+        }
+
+        public void setReplicationLeader(ReplicationLeader replicationLeader) {
+            this.replicationLeader = replicationLeader;
+        }
+
+        @Override
+        public void intercept(Operation operation, Account account) {
+            try {
+                LedgerEvent event = journal.append(accountId, EVENT_TYPES[operation.getType().ordinal()], operation.getAmount(),
+                    account.getSavingsBalance(), account.getLoanAmount(), account.getEmiAmount(), account.getEmiTenure(),
+                    operation.getType() == Operation.Type.EMI || operation.getType() == Operation.Type.LOAN
+                        ? operation.getLoanType() : account.getCurrentLoanType(),
+                    operation.getOperationId());
+                operation.setOffset(event.getOffset());
+                ReplicationLeader leader = replicationLeader;
+                if (leader != null && !leader.awaitReplication(event.getOffset())) {
+                    operation.addWarning("Offset " + event.getOffset() + " not yet replicated: " + leader.describeLag());
+                }
+            } catch (IOException ex) {
+                operation.fail(Ledger.Status.NOT_PERSISTED, "Failed to write to ledger journal: " + ex.getMessage());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                operation.addWarning("Interrupted while waiting for replication");
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package advancedbank;
+
+/*
+ * Ledger State: account fields rebuilt by applying journal events in order
+ * Used to restore the application after a restart and by followers to keep
+ * a read replica of every account they receive events for
+ */
+public class LedgerState {
+    private double savingsBalance;
+    private double loanAmount = 0.0;
+    private double emiAmount = 0.0;
+    private int emiTenure = 0;
+    private String currentLoanType = null;
+    private long lastOffset = 0;
+
+    public LedgerState(double openingBalance) {
+        this.savingsBalance = openingBalance;
+    }
+
+    public synchronized void apply(LedgerEvent event) {
+        if (event.getOffset() <= lastOffset) {
+            return; // Already applied
+        }
+        savingsBalance = event.getBalance();
+        loanAmount = event.getLoanAmount();
+        emiAmount = event.getEmiAmount();
+        emiTenure = event.getEmiTenure();
+        currentLoanType = loanAmount > 0 ? event.getLoanType() : null;
+        lastOffset = event.getOffset();
+    }
+
+    public synchronized double getSavingsBalance() { return savingsBalance; }
+    public synchronized double getLoanAmount() { return loanAmount; }
+    public synchronized double getEmiAmount() { return emiAmount; }
+    public synchronized int getEmiTenure() { return emiTenure; }
+    public synchronized String getCurrentLoanType() { return currentLoanType; }
+    public synchronized long getLastOffset() { return lastOffset; }
+
+    @Override
+    public synchronized String toString() {
+        return "balance=" + savingsBalance + ", loan=" + loanAmount
+            + (currentLoanType != null ? " (" + currentLoanType + ")" : "")
+            + ", emi=" + emiAmount + " x " + emiTenure + ", offset=" + lastOffset;
+    }
+}
@@ -0,0 +1,480 @@
+package advancedbank;
+
+/*
+ * Ledger Stress Harness: hammers one Ledger with deposits, withdrawals, loans, EMI payments
+ * and interest from many threads, records the history and checks that it is linearizable
+ * Every call records when it was invoked and when it returned, and the ledger's sequence
+ * numbers give the order it claims to have applied them in; the history passes when
+ *  - that order respects real time: a call that returned before another was invoked comes first
+ *  - replaying the calls in that order through a single-threaded model gives the same outcome,
+ *    amount and account state for every call, and the same final state
+ *  - with the journal on, offsets follow the same order and the journal replays to the final state
+ * Loans are capped by 24 hour limits, which stay fixed for the length of a run and so can be
+ * modelled; retries reuse the operation ID of the previous call to exercise deduplication, and
+ * must get the amount and balance of the original call back
+ * Workloads are seeded and no call is derived from the ledger's state, so every thread issues the
+ * same calls on every run of a seed, whatever the interleaving
+ * The ledger has the full advanced banking pipeline; the optional stages (velocity, metrics) can
+ * be switched off by name with -Dbank.pipeline.disabled to measure what each one costs
+ *
+ * Usage: java advancedbank.LedgerStressHarness [threads,...] [calls per thread] [rounds] [seed] [journal on|off]
+ */
+import bankcore.Account;
+import bankcore.Ledger;
+import bankcore.LoanProduct;
+import bankcore.Operation;
+import bankcore.OperationMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+public class LedgerStressHarness {
+    private static final String ACCOUNT_ID = "STRESS-0001";
+    private static final String[] LOAN_TYPES = {"Personal", "Home", "Car"};
+    private static final int PERSONAL_LOANS_PER_DAY = 25;
+    private static final Account PRODUCTS = LedgerStages.newAccount(0); // Only used to price EMI calls
+    private static final double CAR_LOAN_AMOUNT_PER_DAY = 40000;
+    private static final int MAX_REPORTED_VIOLATIONS = 10;
+
+    private final int callsPerThread;
+    private final long seed;
+    private final boolean journalled;
+    private volatile String pipeline; // Stages of the last ledger run
+
+    public LedgerStressHarness(int callsPerThread, long seed, boolean journalled) {
+        this.callsPerThread = callsPerThread;
+        this.seed = seed;
+        this.journalled = journalled;
+    }
+
+    // One operation as issued by a worker thread and what the ledger answered
+    private static final class Call {
+        final Operation.Type type;
+        final long operationId;
+        final double amount;
+        final String loanType;
+        long invokedNanos;
+        long returnedNanos;
+        Ledger.Result result;
+
+        Call(Operation.Type type, long operationId, double amount, String loanType) {
+            this.type = type;
+            this.operationId = operationId;
+            this.amount = amount;
+            this.loanType = loanType;
+        }
+
+        @Override
+        public String toString() {
+            return type + "(" + amount + (loanType != null ? ", " + loanType : "") + ") id=" + operationId;
+        }
+    }
+
+    public static class Report {
+        private final int threads;
+        private final int calls;
+        private final double seconds;
+        private final long applied;
+        private final long p50Micros, p99Micros;
+        private final List<String> violations;
+
+        Report(int threads, int calls, double seconds, long applied, long p50Micros, long p99Micros, List<String> violations) {
+            this.threads = threads;
+            this.calls = calls;
+            this.seconds = seconds;
+            this.applied = applied;
+            this.p50Micros = p50Micros;
+            this.p99Micros = p99Micros;
+            this.violations = violations;
+        }
+
+        public double getThroughput() {
+            return calls / seconds;
+        }
+
+        public List<String> getViolations() {
+            return violations;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%7d %9d %12.0f %8d %8d %8.1f%% %10d",
+                threads, calls, getThroughput(), p50Micros, p99Micros, 100.0 * applied / calls, violations.size());
+        }
+    }
+
+    public String getPipeline() {
+        return pipeline;
+    }
+
+    // Runs one round with a fresh ledger and checks its history
+    public Report run(int threads) throws IOException, InterruptedException {
+        File journalFile = null;
+        LedgerJournal journal = null;
+        if (journalled) {
+            journalFile = File.createTempFile("ledger-stress-", ".txt");
+            journal = new LedgerJournal(journalFile);
+        }
+        try {
+            VelocityLimiter limiter = new VelocityLimiter();
+            limiter.configure(VelocityLimiter.WITHDRAWAL, "");
+            limiter.configure("Personal", PERSONAL_LOANS_PER_DAY + "/24h");
+            limiter.configure("Home", "");
+            limiter.configure("Car", "$" + CAR_LOAN_AMOUNT_PER_DAY + "/24h");
+            Ledger ledger = LedgerStages.newLedger(ACCOUNT_ID, BankingApp.OPENING_BALANCE,
+                journal != null ? new LedgerStages.JournalStage(journal, ACCOUNT_ID) : null, limiter,
+                new DeduplicationCache(24 * 60 * 60 * 1000L, 8, 8 * threads * callsPerThread), // A run fits in one segment
+                new AccountSummary(LedgerStages.LOAN_ELIGIBILITY), new OperationMetrics());
+            pipeline = ledger.describePipeline();
+
+            Call[][] histories = new Call[threads][callsPerThread];
+            CountDownLatch ready = new CountDownLatch(threads);
+            CountDownLatch go = new CountDownLatch(1);
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                Call[] history = histories[t];
+                Random random = new Random(seed * 31 + t);
+                long idBase = (long) (t + 1) << 32;
+                workers[t] = new Thread(() -> {
+                    ready.countDown();
+                    try {
+                        go.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    Call lastLoan = null;
+                    for (int i = 0; i < history.length; i++) {
+                        Call call = i > 0 && random.nextInt(100) < 4
+                            ? retry(history[i - 1]) : nextCall(random, lastLoan, idBase + i + 1);
+                        if (call.type == Operation.Type.LOAN) {
+                            lastLoan = call;
+                        }
+                        call.invokedNanos = System.nanoTime();
+                        call.result = invoke(ledger, call);
+                        call.returnedNanos = System.nanoTime();
+                        history[i] = call;
+                    }
+                }, "ledger-stress-" + t);
+                workers[t].start();
+            }
+            ready.await();
+            long start = System.nanoTime();
+            go.countDown();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            List<Call> calls = new ArrayList<>(threads * callsPerThread);
+            for (Call[] history : histories) {
+                calls.addAll(Arrays.asList(history));
+            }
+            List<String> violations = check(calls, ledger, journal);
+
+            long applied = 0;
+            long[] latencies = new long[calls.size()];
+            for (int i = 0; i < calls.size(); i++) {
+                Call call = calls.get(i);
+                latencies[i] = call.returnedNanos - call.invokedNanos;
+                if (call.result.isApplied()) {
+                    applied++;
+                }
+            }
+            Arrays.sort(latencies);
+            return new Report(threads, calls.size(), seconds, applied,
+                latencies[latencies.length / 2] / 1000, latencies[(int) (latencies.length * 0.99)] / 1000, violations);
+        } finally {
+            if (journal != null) {
+                journal.close();
+                journalFile.delete();
+            }
+        }
+    }
+
+    // Mostly small amounts so balances stay positive and every outcome comes up; loan amounts are whole dollars
+    private static Call nextCall(Random random, Call lastLoan, long operationId) {
+        int roll = random.nextInt(100);
+        if (roll < 30) {
+            return new Call(Operation.Type.DEPOSIT, operationId, 1 + random.nextInt(500), null);
+        } else if (roll < 60) {
+            return new Call(Operation.Type.WITHDRAWAL, operationId, 1 + random.nextInt(600), null);
+        } else if (roll < 70) {
+            return new Call(Operation.Type.LOAN, operationId, 500 + random.nextInt(7500), LOAN_TYPES[random.nextInt(LOAN_TYPES.length)]);
+        } else if (roll < 90) {
+            // Priced from the thread's own last loan request rather than read from the ledger, so the calls depend only
+            // on the seed; it is right while that loan is the active one, and half the time deliberately wrong
+            double emi = lastLoan != null ? PRODUCTS.getProduct(lastLoan.loanType).calculateEMI(lastLoan.amount) : 50;
+            if (random.nextBoolean()) {
+                emi += 1 + random.nextInt(50);
+            }
+            return new Call(Operation.Type.EMI, operationId, Math.round(emi * 100) / 100.0, null);
+        } else {
+            return new Call(Operation.Type.INTEREST, operationId, 0, null);
+        }
+    }
+
+    private static Call retry(Call previous) {
+        return new Call(previous.type, previous.operationId, previous.amount, previous.loanType);
+    }
+
+    private static Ledger.Result invoke(Ledger ledger, Call call) {
+        switch (call.type) {
+            case DEPOSIT: return ledger.deposit(call.operationId, call.amount);
+            case WITHDRAWAL: return ledger.withdraw(call.operationId, call.amount);
+            case LOAN: return ledger.requestLoan(call.operationId, call.loanType, call.amount);
+            case EMI: return ledger.payEmi(call.operationId, call.amount);
+            default: return ledger.applyInterest(call.operationId);
+        }
+    }
+
+    private List<String> check(List<Call> calls, Ledger ledger, LedgerJournal journal) throws IOException {
+        List<String> violations = new ArrayList<>();
+        calls.sort(Comparator.comparingLong(call -> call.result.getSequence()));
+
+        // The claimed order must be a permutation of the calls
+        for (int i = 0; i < calls.size(); i++) {
+            if (calls.get(i).result.getSequence() != i + 1) {
+                violations.add("Sequence " + calls.get(i).result.getSequence() + " at position " + (i + 1) + ": sequence numbers are not unique and gapless");
+                return violations;
+            }
+        }
+
+        // Real-time order: no call may be ordered after one that was invoked after it returned
+        long earliestLaterReturn = Long.MAX_VALUE;
+        for (int i = calls.size() - 1; i >= 0; i--) {
+            Call call = calls.get(i);
+            if (earliestLaterReturn < call.invokedNanos) {
+                violations.add("#" + call.result.getSequence() + " " + call + " is ordered after a call that returned before it was invoked");
+            }
+            earliestLaterReturn = Math.min(earliestLaterReturn, call.returnedNanos);
+        }
+
+        // Sequential replay
+        Model model = new Model(BankingApp.OPENING_BALANCE, ledger.hasInterceptor("deduplication"), ledger.hasInterceptor("velocity"));
+        long lastOffset = 0;
+        for (Call call : calls) {
+            Ledger.Result actual = call.result;
+            String mismatch = model.apply(call, actual);
+            if (mismatch != null) {
+                violations.add("#" + actual.getSequence() + " " + call + ": " + mismatch);
+                model.resync(actual); // Report the next divergence rather than every call after this one
+            }
+            if (journal != null && actual.isApplied()) {
+                if (actual.getOffset() != lastOffset + 1) {
+                    violations.add("#" + actual.getSequence() + " " + call + ": journal offset " + actual.getOffset() + " after " + lastOffset);
+                }
+                lastOffset = actual.getOffset();
+            }
+        }
+        String finalMismatch = model.compare(ledger.getSavingsBalance(), ledger.getLoanAmount(), ledger.getEmiAmount(),
+            ledger.getEmiTenure(), ledger.getCurrentLoanType());
+        if (finalMismatch != null) {
+            violations.add("Final ledger state: " + finalMismatch);
+        }
+        if (journal != null) {
+            LedgerState state = new LedgerState(BankingApp.OPENING_BALANCE);
+            journal.replay(1, journal.getLastOffset(), state::apply);
+            String journalMismatch = model.compare(state.getSavingsBalance(), state.getLoanAmount(), state.getEmiAmount(),
+                state.getEmiTenure(), state.getCurrentLoanType());
+            if (journalMismatch != null) {
+                violations.add("Journal replay: " + journalMismatch);
+            }
+        }
+        return violations;
+    }
+
+    // The ledger's rules applied one call at a time, written separately from Ledger
+    private static final class Model {
+        private static final double EPSILON = 1e-6;
+
+        double savingsBalance;
+        double loanAmount;
+        double emiAmount;
+        int emiTenure;
+        String currentLoanType;
+        final Map<Long, double[]> originals = new HashMap<>(); // Applied ID -> {amount, balance after}
+        int personalLoans;
+        double carLoanTotal;
+
+        final boolean deduplicated;
+        final boolean limited;
+
+        Model(double openingBalance, boolean deduplicated, boolean limited) {
+            this.savingsBalance = openingBalance;
+            this.deduplicated = deduplicated;
+            this.limited = limited;
+        }
+
+        // Returns null when the ledger's answer matches the model, otherwise what differs
+        String apply(Call call, Ledger.Result actual) {
+            Ledger.Status expected;
+            double amount = call.amount;
+            double balanceAfter;
+            double[] original = deduplicated ? originals.get(call.operationId) : null;
+            if (original != null) {
+                expected = Ledger.Status.DUPLICATE;
+                amount = original[0];
+                balanceAfter = original[1];
+            } else {
+                switch (call.type) {
+                    case DEPOSIT:
+                        expected = Ledger.Status.APPLIED;
+                        savingsBalance += amount;
+                        break;
+                    case WITHDRAWAL:
+                        if (amount > savingsBalance) {
+                            expected = Ledger.Status.INSUFFICIENT_BALANCE;
+                        } else {
+                            expected = Ledger.Status.APPLIED;
+                            savingsBalance -= amount;
+                        }
+                        break;
+                    case LOAN:
+                        if (loanAmount > 0) {
+                            expected = Ledger.Status.EXISTING_LOAN;
+                        } else if (amount > savingsBalance * 5) {
+                            expected = Ledger.Status.EXCEEDS_ELIGIBILITY;
+                        } else if (limited && ((call.loanType.equals("Personal") && personalLoans + 1 > PERSONAL_LOANS_PER_DAY)
+                                || (call.loanType.equals("Car") && carLoanTotal + amount > CAR_LOAN_AMOUNT_PER_DAY))) {
+                            expected = Ledger.Status.LIMIT_REACHED;
+                        } else {
+                            expected = Ledger.Status.APPLIED;
+                            if (call.loanType.equals("Personal")) {
+                                personalLoans++;
+                            } else if (call.loanType.equals("Car")) {
+                                carLoanTotal += amount;
+                            }
+                            loanAmount = amount;
+                            currentLoanType = call.loanType;
+                            double rate;
+                            switch (call.loanType) {
+                                case "Personal":
+                                    emiTenure = LedgerStages.PERSONAL_LOAN_TENURE;
+                                    rate = LedgerStages.PERSONAL_LOAN_RATE;
+                                    break;
+                                case "Home":
+                                    emiTenure = LedgerStages.HOME_LOAN_TENURE;
+                                    rate = LedgerStages.HOME_LOAN_RATE;
+                                    break;
+                                default:
+                                    emiTenure = LedgerStages.CAR_LOAN_TENURE;
+                                    rate = LedgerStages.CAR_LOAN_RATE;
+                                    break;
+                            }
+                            emiAmount = LoanProduct.calculateEMI(amount, rate, emiTenure);
+                        }
+                        break;
+                    case EMI:
+                        if (loanAmount <= 0) {
+                            expected = Ledger.Status.NO_LOAN;
+                        } else if (Math.abs(amount - emiAmount) >= 0.005) {
+                            expected = Ledger.Status.WRONG_EMI_AMOUNT;
+                        } else if (emiAmount > savingsBalance) {
+                            expected = Ledger.Status.INSUFFICIENT_BALANCE;
+                        } else {
+                            expected = Ledger.Status.APPLIED;
+                            amount = emiAmount;
+                            savingsBalance -= emiAmount;
+                            loanAmount -= emiAmount;
+                            emiTenure--;
+                            if (emiTenure <= 0 || loanAmount <= 0) {
+                                loanAmount = 0;
+                                emiAmount = 0;
+                                emiTenure = 0;
+                                currentLoanType = null;
+                            }
+                        }
+                        break;
+                    default:
+                        expected = Ledger.Status.APPLIED;
+                        amount = savingsBalance * LedgerStages.SAVINGS_INTEREST_RATE / 12;
+                        savingsBalance += amount;
+                        break;
+                }
+                balanceAfter = savingsBalance;
+                if (expected == Ledger.Status.APPLIED) {
+                    originals.put(call.operationId, new double[] {amount, balanceAfter});
+                }
+            }
+
+            if (actual.getStatus() != expected) {
+                return "expected " + expected + " but got " + actual;
+            }
+            boolean moved = expected == Ledger.Status.APPLIED || expected == Ledger.Status.DUPLICATE;
+            if (moved && Math.abs(actual.getAmount() - amount) > EPSILON) {
+                return "expected amount " + amount + " but got " + actual;
+            }
+            if (Math.abs(actual.getSavingsBalance() - balanceAfter) > EPSILON) {
+                return "expected balance " + balanceAfter + " but got " + actual;
+            }
+            // A duplicate reports the original's balance; the rest of the state is the current one
+            String stateMismatch = compare(expected == Ledger.Status.DUPLICATE ? savingsBalance : actual.getSavingsBalance(),
+                actual.getLoanAmount(), actual.getEmiAmount(), actual.getEmiTenure(), actual.getCurrentLoanType());
+            return stateMismatch != null ? "state after call: " + stateMismatch : null;
+        }
+
+        String compare(double balance, double loan, double emi, int tenure, String loanType) {
+            if (Math.abs(balance - savingsBalance) > EPSILON || Math.abs(loan - loanAmount) > EPSILON
+                    || Math.abs(emi - emiAmount) > EPSILON || tenure != emiTenure
+                    || (loanType == null ? currentLoanType != null : !loanType.equals(currentLoanType))) {
+                return "expected balance=" + savingsBalance + ", loan=" + loanAmount + " (" + currentLoanType + "), emi=" + emiAmount + " x " + emiTenure
+                    + " but got balance=" + balance + ", loan=" + loan + " (" + loanType + "), emi=" + emi + " x " + tenure;
+            }
+            return null;
+        }
+
+        void resync(Ledger.Result actual) {
+            if (actual.getStatus() != Ledger.Status.DUPLICATE) {
+                savingsBalance = actual.getSavingsBalance();
+            }
+            loanAmount = actual.getLoanAmount();
+            emiAmount = actual.getEmiAmount();
+            emiTenure = actual.getEmiTenure();
+            currentLoanType = actual.getCurrentLoanType();
+            if (actual.isApplied()) {
+                originals.put(actual.getOperationId(), new double[] {actual.getAmount(), actual.getSavingsBalance()});
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String[] threadCounts = (args.length > 0 ? args[0] : "1,2,4,8,16").split(",");
+        int callsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 42;
+        boolean journalled = args.length > 4 && args[4].equals("on");
+
+        LedgerStressHarness harness = new LedgerStressHarness(callsPerThread, seed, journalled);
+        harness.run(Integer.parseInt(threadCounts[threadCounts.length - 1].trim())); // Warm-up, not reported
+
+        System.out.println("Pipeline: " + harness.getPipeline());
+        System.out.println("Seed " + seed + ", " + callsPerThread + " calls per thread, journal " + (journalled ? "on" : "off"));
+        System.out.println("Threads     Calls    Calls/sec  p50(us)  p99(us)  Applied Violations");
+        int failedRounds = 0;
+        for (String threadCount : threadCounts) {
+            for (int round = 0; round < rounds; round++) {
+                Report report = harness.run(Integer.parseInt(threadCount.trim()));
+                System.out.println(report);
+                List<String> violations = report.getViolations();
+                for (int i = 0; i < Math.min(violations.size(), MAX_REPORTED_VIOLATIONS); i++) {
+                    System.out.println("    " + violations.get(i));
+                }
+                if (!violations.isEmpty()) {
+                    failedRounds++;
+                }
+            }
+        }
+        System.out.println(failedRounds == 0 ? "History linearizable in every round" : failedRounds + " round(s) with violations");
+        if (failedRounds > 0) {
+            System.exit(1);
+        }
+    }
+}
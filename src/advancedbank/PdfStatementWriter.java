@@ -0,0 +1,202 @@
+package advancedbank;
+
+/*
+ * PDF Statement Writer: writes a plain PDF 1.4 statement without any PDF library
+ * Each page's content stream goes straight to the file as rows arrive; only the byte
+ * offset of every PDF object is kept, for the cross-reference table written at the end
+ * Object layout: 1 catalog, 2 page tree (written last, once all pages are known),
+ * 3 font, then a content stream, its length and a page object per page
+ */
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PdfStatementWriter implements StatementWriter {
+    private static final int PAGE_WIDTH = 612; // US Letter, in points
+    private static final int PAGE_HEIGHT = 792;
+    private static final int MARGIN = 50;
+    private static final int LEADING = 14;
+    private static final int FONT_SIZE = 9;
+    private static final int DATE_WIDTH = 20, TYPE_WIDTH = 26, AMOUNT_WIDTH = 14;
+
+    private final CountingOutputStream out;
+    private final DecimalFormat amountFormat = new DecimalFormat("#,##0.00");
+    private final List<Long> objectOffsets = new ArrayList<>(); // Index is object number - 1
+    private final List<Integer> pageObjects = new ArrayList<>();
+    private int nextObject = 4;
+    private int lengthObject;
+    private long streamStart;
+    private int y;
+    private final StringBuilder row = new StringBuilder(96); // Reused for every table row
+
+    public PdfStatementWriter(File file) throws IOException {
+        this.out = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file), 16 * 1024));
+    }
+
+    @Override
+    public void begin(String accountId, double openingBalance) throws IOException {
+        write("%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n"); // Binary marker comment
+        startObject(1);
+        write("<< /Type /Catalog /Pages 2 0 R >>\nendobj\n");
+        startObject(3);
+        write("<< /Type /Font /Subtype /Type1 /BaseFont /Courier >>\nendobj\n");
+
+        startPage();
+        line("Bank Statement", 16);
+        line("Account: " + accountId, FONT_SIZE);
+        line("Generated: " + CsvStatementWriter.DATE_FORMAT.format(Instant.now()), FONT_SIZE);
+        line("Opening Balance: $" + amountFormat.format(openingBalance), FONT_SIZE);
+        y -= LEADING;
+        tableHeader();
+    }
+
+    @Override
+    public void transaction(LedgerEvent event) throws IOException {
+        if (y < MARGIN + LEADING) {
+            endPage();
+            startPage();
+            tableHeader();
+        }
+        line(row(CsvStatementWriter.DATE_FORMAT.format(Instant.ofEpochMilli(event.getTimestamp())),
+            event.getDescription(),
+            "$" + amountFormat.format(event.getAmount()),
+            "$" + amountFormat.format(event.getBalance())), FONT_SIZE);
+    }
+
+    @Override
+    public void end(LedgerState closing) throws IOException {
+        if (y < MARGIN + 5 * LEADING) {
+            endPage();
+            startPage();
+        }
+        y -= LEADING;
+        line("Savings Balance: $" + amountFormat.format(closing.getSavingsBalance()), FONT_SIZE);
+        line("Loan Amount: $" + amountFormat.format(closing.getLoanAmount())
+            + (closing.getCurrentLoanType() != null ? " (" + closing.getCurrentLoanType() + ")" : ""), FONT_SIZE);
+        line("EMI: $" + amountFormat.format(closing.getEmiAmount()) + " (Remaining: " + closing.getEmiTenure() + " months)", FONT_SIZE);
+        endPage();
+
+        // Page tree, now that every page is known
+        startObject(2);
+        StringBuilder kids = new StringBuilder();
+        for (int page : pageObjects) {
+            kids.append(page).append(" 0 R ");
+        }
+        write("<< /Type /Pages /Kids [" + kids + "] /Count " + pageObjects.size() + " >>\nendobj\n");
+
+        // Cross-reference table: fixed 20-byte entries
+        long xref = out.count;
+        write("xref\n0 " + (objectOffsets.size() + 1) + "\n0000000000 65535 f \n");
+        for (long offset : objectOffsets) {
+            write(String.format("%010d 00000 n \n", offset));
+        }
+        write("trailer\n<< /Size " + (objectOffsets.size() + 1) + " /Root 1 0 R >>\nstartxref\n" + xref + "\n%%EOF\n");
+        out.flush();
+    }
+
+    private void startPage() throws IOException {
+        int contentObject = nextObject++;
+        lengthObject = nextObject++;
+        pageObjects.add(nextObject++);
+        startObject(contentObject);
+        write("<< /Length " + lengthObject + " 0 R >>\nstream\n");
+        streamStart = out.count;
+        write("BT\n");
+        y = PAGE_HEIGHT - MARGIN;
+    }
+
+    private void endPage() throws IOException {
+        write("ET\n");
+        long length = out.count - streamStart;
+        write("endstream\nendobj\n");
+        startObject(lengthObject);
+        write(length + "\nendobj\n");
+        int pageObject = pageObjects.get(pageObjects.size() - 1);
+        startObject(pageObject);
+        write("<< /Type /Page /Parent 2 0 R /MediaBox [0 0 " + PAGE_WIDTH + " " + PAGE_HEIGHT + "] /Contents "
+            + (lengthObject - 1) + " 0 R /Resources << /Font << /F1 3 0 R >> >> >>\nendobj\n");
+    }
+
+    private void tableHeader() throws IOException {
+        line(row("Date", "Type", "Amount", "Balance"), FONT_SIZE);
+        line("--------------------------------------------------------------------------------", FONT_SIZE);
+    }
+
+    // Fixed-width columns for the monospaced font; String.format is too slow for every row
+    private String row(String date, String type, String amount, String balance) {
+        row.setLength(0);
+        pad(row.append(date), DATE_WIDTH + 1);
+        pad(row.append(type), DATE_WIDTH + TYPE_WIDTH + 2);
+        pad(row, row.length() + AMOUNT_WIDTH - amount.length()).append(amount).append(' ');
+        pad(row, row.length() + AMOUNT_WIDTH - balance.length()).append(balance);
+        return row.toString();
+    }
+
+    private static StringBuilder pad(StringBuilder sb, int length) {
+        while (sb.length() < length) {
+            sb.append(' ');
+        }
+        return sb;
+    }
+
+    private void line(String text, int fontSize) throws IOException {
+        write("/F1 " + fontSize + " Tf 1 0 0 1 " + MARGIN + " " + y + " Tm (" + escape(text) + ") Tj\n");
+        y -= fontSize > FONT_SIZE ? fontSize + LEADING : LEADING;
+    }
+
+    private void startObject(int number) throws IOException {
+        while (objectOffsets.size() < number) {
+            objectOffsets.add(0L);
+        }
+        objectOffsets.set(number - 1, out.count);
+        write(number + " 0 obj\n");
+    }
+
+    private static String escape(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 8);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '(' || c == ')' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 32 || c > 255) {
+                sb.append('?'); // Outside the standard font encoding
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private void write(String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    // Tracks the byte position for object offsets and stream lengths
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
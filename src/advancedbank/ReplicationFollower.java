@@ -0,0 +1,192 @@
+package advancedbank;
+
+/*
+ * Replication Follower: hot standby for a BankingApp running as replication leader
+ * Applies the leader's ledger events in offset order, keeps its own copy of the journal
+ * and acknowledges each offset once it is written locally
+ * Subscribes with the checksum of its last event; a leader whose journal differs refuses it,
+ * and the follower then stops rather than splice the two histories
+ * Can be promoted to take over as the banking application
+ *
+ * Usage: java advancedbank.ReplicationFollower <leader host> <leader port> [journal file]
+ * Commands on standard input: status, promote, quit
+ */
+import javax.swing.*;
+import java.awt.GraphicsEnvironment;
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ReplicationFollower {
+    private static final long RECONNECT_MILLIS = 2000;
+
+    private final String leaderHost;
+    private final int leaderPort;
+    private final LedgerJournal journal;
+    private final Map<String, LedgerState> replicas = new ConcurrentHashMap<>(); // Read replica per account
+    private volatile Socket socket;
+    private volatile long leaderHead = 0;
+    private volatile boolean running = true;
+    private volatile boolean promoted = false;
+
+    public ReplicationFollower(String leaderHost, int leaderPort, LedgerJournal journal) throws IOException {
+        this.leaderHost = leaderHost;
+        this.leaderPort = leaderPort;
+        this.journal = journal;
+        journal.replay(1, Long.MAX_VALUE, this::applyToReplica);
+        leaderHead = journal.getLastOffset();
+    }
+
+    public void start() {
+        Thread thread = new Thread(this::replicationLoop, "replication-follower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void replicationLoop() {
+        while (running) {
+            try (Socket s = new Socket(leaderHost, leaderPort)) {
+                socket = s;
+                s.setTcpNoDelay(true);
+                BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+                BufferedWriter out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8));
+                LedgerEvent last = journal.getLastEvent();
+                out.write("SUBSCRIBE " + (journal.getLastOffset() + 1) + " " + (last != null ? last.checksum() : 0));
+                out.newLine();
+                out.flush();
+                System.out.println("Connected to leader " + leaderHost + ":" + leaderPort + " at offset " + journal.getLastOffset());
+
+                String line;
+                long unacknowledged = journal.getLastOffset(); // Highest offset appended; what we had is acknowledged once accepted
+                long acknowledged = 0; // Highest offset synced and acknowledged
+                while (running && (line = in.readLine()) != null) {
+                    if (line.startsWith("REJECT ")) {
+                        System.err.println("Leader refused replication: " + line.substring("REJECT ".length())
+                            + "; stopped following, the follower journal needs to be replaced");
+                        running = false;
+                        break;
+                    } else if (line.startsWith("EVENT ")) {
+                        LedgerEvent event = LedgerEvent.parse(line.substring("EVENT ".length()));
+                        journal.appendReplicated(event); // Rejects gaps and reordering
+                        applyToReplica(event);
+                        leaderHead = Math.max(leaderHead, event.getOffset());
+                        unacknowledged = event.getOffset();
+                    } else if (line.startsWith("HEAD ")) {
+                        leaderHead = Long.parseLong(line.substring("HEAD ".length()).trim());
+                    }
+                    if (unacknowledged > acknowledged && !in.ready()) {
+                        // One fsync and one cumulative ACK per batch, sent only once the batch is on disk
+                        journal.sync();
+                        out.write("ACK " + unacknowledged);
+                        out.newLine();
+                        out.flush();
+                        acknowledged = unacknowledged;
+                    }
+                }
+            } catch (IOException | IllegalArgumentException ex) {
+                if (running) {
+                    System.err.println("Replication from leader interrupted: " + ex.getMessage());
+                }
+            }
+            if (running) {
+                try {
+                    Thread.sleep(RECONNECT_MILLIS);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void applyToReplica(LedgerEvent event) {
+        replicas.computeIfAbsent(event.getAccountId(), id -> new LedgerState(BankingApp.OPENING_BALANCE)).apply(event);
+    }
+
+    public LedgerState getReplica(String accountId) {
+        return replicas.get(accountId);
+    }
+
+    public long getAppliedOffset() {
+        return journal.getLastOffset();
+    }
+
+    public long getLag() {
+        return Math.max(0, leaderHead - journal.getLastOffset());
+    }
+
+    public String describeStatus() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(promoted ? "Promoted" : "Following " + leaderHost + ":" + leaderPort)
+          .append(", applied offset ").append(getAppliedOffset())
+          .append(", leader head ").append(leaderHead)
+          .append(", lag ").append(getLag()).append(" events");
+        for (Map.Entry<String, LedgerState> entry : replicas.entrySet()) {
+            sb.append(System.lineSeparator()).append("  ").append(entry.getKey()).append(": ").append(entry.getValue());
+        }
+        return sb.toString();
+    }
+
+    private void stop() {
+        running = false;
+        Socket s = socket;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException ex) {
+                // Already closed
+            }
+        }
+    }
+
+    // Stops following and takes over: the banking application opens on this follower's journal
+    public void promote() throws IOException {
+        if (promoted) {
+            return;
+        }
+        stop();
+        promoted = true;
+        if (GraphicsEnvironment.isHeadless()) {
+            // No UI to take over with; serve the journal to other followers instead
+            ReplicationLeader leader = BankingApp.startReplicationLeader(journal, System.out::println);
+            System.out.println(leader != null
+                ? "Promoted: serving journal as leader on port " + leader.getPort()
+                : "Promoted: set -D" + BankingApp.REPLICATION_PORT_PROPERTY + " to serve other followers");
+        } else {
+            SwingUtilities.invokeLater(() -> new BankingApp(journal).setVisible(true));
+            System.out.println("Promoted: banking application started at offset " + journal.getLastOffset());
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: java advancedbank.ReplicationFollower <leader host> <leader port> [journal file]");
+            System.exit(1);
+        }
+        File journalFile = new File(args.length > 2 ? args[2] : "follower_journal.txt");
+        ReplicationFollower follower = new ReplicationFollower(args[0], Integer.parseInt(args[1]), new LedgerJournal(journalFile));
+        follower.start();
+
+        BufferedReader console = new BufferedReader(new InputStreamReader(System.in));
+        String command;
+        while ((command = console.readLine()) != null) {
+            switch (command.trim()) {
+                case "status":
+                    System.out.println(follower.describeStatus());
+                    break;
+                case "promote":
+                    follower.promote();
+                    break;
+                case "quit":
+                    follower.stop();
+                    System.exit(0);
+                    break;
+                default:
+                    System.out.println("Commands: status, promote, quit");
+            }
+        }
+        // Standard input closed: keep running until the process is killed
+        Thread.currentThread().join();
+    }
+}
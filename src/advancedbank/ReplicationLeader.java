@@ -0,0 +1,311 @@
+package advancedbank;
+
+/*
+ * Replication Leader: streams the ledger journal to follower processes over a local socket
+ * Protocol (one text line per message):
+ *   follower -> leader  SUBSCRIBE <next offset> <checksum of its last event, 0 if none>   then   ACK <offset>
+ *   leader -> follower  EVENT <serialized event>  and    HEAD <last offset> when idle
+ *                       REJECT <reason> instead, when the follower's journal is ahead or differs
+ * A new follower first catches up from the journal file, then receives live events
+ * A follower counts as having an offset only once it has acknowledged it, never from SUBSCRIBE
+ * In SYNC mode a commit waits until at least one follower has acknowledged it
+ * Lag is reported periodically while a follower is behind, and when followers connect or leave
+ */
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public class ReplicationLeader implements LedgerJournal.Listener, Closeable {
+    public enum CommitMode { ASYNC, SYNC }
+
+    private static final int FOLLOWER_QUEUE_CAPACITY = 10000; // Slower followers are dropped and catch up from disk
+    private static final long HEARTBEAT_MILLIS = 1000;
+
+    private final LedgerJournal journal;
+    private final CommitMode mode;
+    private final long syncTimeoutMillis;
+    private final ServerSocket serverSocket;
+    private final List<FollowerSession> followers = new CopyOnWriteArrayList<>();
+    private final Object ackLock = new Object();
+    private volatile boolean running = true;
+
+    public ReplicationLeader(LedgerJournal journal, String host, int port, CommitMode mode, long syncTimeoutMillis) throws IOException {
+        this.journal = journal;
+        this.mode = mode;
+        this.syncTimeoutMillis = syncTimeoutMillis;
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getByName(host));
+    }
+
+    public void start() {
+        journal.addListener(this);
+        Thread acceptThread = new Thread(this::acceptLoop, "replication-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    // Passes describeLag() to the reporter every interval while a follower is behind, once more when it has
+    // caught up, and whenever the number of followers changes
+    public void startLagReports(long intervalMillis, Consumer<String> reporter) {
+        Thread thread = new Thread(() -> {
+            int lastFollowers = -1;
+            long lastLag = 0;
+            while (running) {
+                try {
+                    Thread.sleep(intervalMillis);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                int followerCount = getFollowerCount();
+                long lag = followerCount == 0 ? 0 : getReplicationLag();
+                if (followerCount != lastFollowers || lag > 0 || lastLag > 0) {
+                    reporter.accept("Replication lag: " + describeLag());
+                }
+                lastFollowers = followerCount;
+                lastLag = lag;
+            }
+        }, "replication-lag");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public CommitMode getMode() {
+        return mode;
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                FollowerSession session = new FollowerSession(socket);
+                Thread thread = new Thread(session, "replication-" + socket.getRemoteSocketAddress());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException ex) {
+                if (running) {
+                    System.err.println("Replication accept failed: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    // Called by the journal under its lock, so every session sees events in offset order
+    @Override
+    public void onAppend(LedgerEvent event) {
+        for (FollowerSession session : followers) {
+            if (!session.queue.offer(event)) {
+                session.close(); // Too far behind; it will reconnect and catch up from the journal file
+            }
+        }
+    }
+
+    // Returns true once the offset is safe on a follower (always true in ASYNC mode)
+    public boolean awaitReplication(long offset) throws InterruptedException {
+        if (mode == CommitMode.ASYNC) {
+            return true;
+        }
+        long deadline = System.currentTimeMillis() + syncTimeoutMillis;
+        synchronized (ackLock) {
+            while (getHighestAckedOffset() < offset) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0 || followers.isEmpty()) {
+                    return false;
+                }
+                ackLock.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    public long getHighestAckedOffset() {
+        long highest = 0;
+        for (FollowerSession session : followers) {
+            highest = Math.max(highest, session.ackedOffset);
+        }
+        return highest;
+    }
+
+    public int getFollowerCount() {
+        return followers.size();
+    }
+
+    // Events committed on the leader but not yet acknowledged by the most up to date follower
+    public long getReplicationLag() {
+        return followers.isEmpty() ? journal.getLastOffset() : journal.getLastOffset() - getHighestAckedOffset();
+    }
+
+    public String describeLag() {
+        if (followers.isEmpty()) {
+            return "No followers connected";
+        }
+        long head = journal.getLastOffset();
+        long now = System.currentTimeMillis();
+        StringBuilder sb = new StringBuilder();
+        for (FollowerSession session : followers) {
+            if (sb.length() > 0) {
+                sb.append("; ");
+            }
+            sb.append(session.name).append(": acked ").append(session.ackedOffset).append("/").append(head)
+              .append(" (lag ").append(head - session.ackedOffset).append(" events, last ack ")
+              .append(session.lastAckMillis == 0 ? "never" : (now - session.lastAckMillis) + " ms ago").append(")");
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        journal.removeListener(this);
+        serverSocket.close();
+        for (FollowerSession session : followers) {
+            session.close();
+        }
+    }
+
+    private class FollowerSession implements Runnable {
+        private final Socket socket;
+        private final String name;
+        private final BlockingQueue<LedgerEvent> queue = new LinkedBlockingQueue<>(FOLLOWER_QUEUE_CAPACITY);
+        private volatile long ackedOffset = 0;
+        private volatile long lastAckMillis = 0;
+
+        FollowerSession(Socket socket) {
+            this.socket = socket;
+            this.name = "follower@" + socket.getRemoteSocketAddress();
+        }
+
+        @Override
+        public void run() {
+            try {
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+                String hello = in.readLine();
+                String[] subscribe = hello != null ? hello.trim().split(" ") : new String[0];
+                if (subscribe.length != 3 || !subscribe[0].equals("SUBSCRIBE")) {
+                    throw new IOException("Expected SUBSCRIBE <next offset> <checksum> but got: " + hello);
+                }
+                long fromOffset = Long.parseLong(subscribe[1]);
+                long checksum = Long.parseLong(subscribe[2]);
+
+                // The leader's journal only grows, so a follower that matches now still matches once registered
+                String rejection = checkFollowerJournal(fromOffset, checksum);
+                if (rejection != null) {
+                    out.write("REJECT " + rejection);
+                    out.newLine();
+                    out.flush();
+                    System.err.println("Replication to " + name + " refused: " + rejection);
+                    return;
+                }
+
+                // Register for live events and fix the catch-up range atomically with respect to appends
+                long caughtUpTo;
+                synchronized (journal) {
+                    followers.add(this);
+                    caughtUpTo = journal.getLastOffset();
+                }
+                Thread ackThread = new Thread(() -> readAcks(in), name + "-acks");
+                ackThread.setDaemon(true);
+                ackThread.start();
+
+                journal.replay(fromOffset, caughtUpTo, event -> send(out, event));
+                out.flush();
+
+                while (running && !socket.isClosed()) {
+                    LedgerEvent event = queue.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                    if (event == null) {
+                        out.write("HEAD " + journal.getLastOffset());
+                        out.newLine();
+                    } else {
+                        do {
+                            if (event.getOffset() > caughtUpTo) {
+                                send(out, event);
+                            }
+                        } while ((event = queue.poll()) != null);
+                    }
+                    out.flush();
+                }
+            } catch (IOException | UncheckedIOException | IllegalArgumentException ex) {
+                if (running && !socket.isClosed()) {
+                    System.err.println("Replication to " + name + " stopped: " + ex.getMessage());
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+            }
+        }
+
+        // Returns why the follower cannot continue from fromOffset, or null if its last event matches ours
+        private String checkFollowerJournal(long fromOffset, long checksum) throws IOException {
+            long lastOffset = journal.getLastOffset();
+            if (fromOffset < 1 || fromOffset > lastOffset + 1) {
+                return "follower asks for offset " + fromOffset + " but the leader's journal ends at " + lastOffset;
+            }
+            if (fromOffset == 1) {
+                return null; // Empty follower journal
+            }
+            LedgerEvent[] ours = new LedgerEvent[1];
+            if (fromOffset - 1 == lastOffset) {
+                ours[0] = journal.getLastEvent();
+            } else {
+                journal.replay(fromOffset - 1, fromOffset - 1, event -> ours[0] = event);
+            }
+            if (ours[0] == null || ours[0].checksum() != checksum) {
+                return "follower's event at offset " + (fromOffset - 1) + " differs from the leader's";
+            }
+            return null;
+        }
+
+        private void send(BufferedWriter out, LedgerEvent event) {
+            try {
+                out.write("EVENT " + event.serialize());
+                out.newLine();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        private void readAcks(BufferedReader in) {
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith("ACK ")) {
+                        ackedOffset = Math.max(ackedOffset, Long.parseLong(line.substring("ACK ".length()).trim()));
+                        lastAckMillis = System.currentTimeMillis();
+                        synchronized (ackLock) {
+                            ackLock.notifyAll();
+                        }
+                    }
+                }
+            } catch (IOException | NumberFormatException ex) {
+                // Connection closed; the session cleans up
+            } finally {
+                close();
+            }
+        }
+
+        void close() {
+            followers.remove(this);
+            synchronized (ackLock) {
+                ackLock.notifyAll();
+            }
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                // Already closed
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package advancedbank;
+
+/*
+ * Statement Exporter: unattended CSV and PDF statements for every account in the ledger journal
+ * The journal is read once: each line is copied to one of a fixed number of spill files (4 per
+ * worker) chosen by a hash of its account, as EndOfDayReport partitions it; then each task in a
+ * bounded worker pool takes one spill file, splits it further into runs of at most
+ * [accounts per group] accounts if it holds more, and streams each run, writing each transaction
+ * straight into that account's CSV and PDF writers, so no table model or transaction history is
+ * held in memory and the number of open files does not grow with the number of accounts
+ *
+ * Usage: java advancedbank.StatementExporter [journal file] [output directory] [workers] [accounts per group]
+ */
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.ToIntFunction;
+
+public class StatementExporter {
+    private static final int PARTITIONS_PER_WORKER = 4; // Spill files from the journal pass; evens out uneven partitions
+
+    private final File journalFile;
+    private final File outputDir;
+    private final int workers;
+    private final int accountsPerGroup; // Bounds the open files per worker to 2x this
+
+    public StatementExporter(File journalFile, File outputDir, int workers, int accountsPerGroup) {
+        this.journalFile = journalFile;
+        this.outputDir = outputDir;
+        this.workers = workers;
+        this.accountsPerGroup = accountsPerGroup;
+    }
+
+    // Statement being written for one account of a group
+    private static class AccountStatement {
+        final LedgerState state = new LedgerState(BankingApp.OPENING_BALANCE);
+        final List<StatementWriter> writers = new ArrayList<>(2);
+        boolean begun;
+    }
+
+    // Exports statements for every account in the journal and returns how many were written
+    public int export() throws IOException, InterruptedException {
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Cannot create output directory " + outputDir);
+        }
+        File spillDir = Files.createTempDirectory(outputDir.toPath(), "spill-").toFile();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            List<File> spillFiles = split(spillDir, workers * PARTITIONS_PER_WORKER);
+            List<Future<Integer>> passes = new ArrayList<>();
+            for (File spillFile : spillFiles) {
+                passes.add(pool.submit(() -> exportPartition(spillFile)));
+            }
+            int exported = 0;
+            for (Future<Integer> pass : passes) {
+                try {
+                    exported += pass.get();
+                } catch (ExecutionException ex) {
+                    throw new IOException("Statement export failed: " + ex.getCause().getMessage(), ex.getCause());
+                }
+            }
+            return exported;
+        } finally {
+            pool.shutdownNow();
+            pool.awaitTermination(1, TimeUnit.MINUTES); // Workers may still be reading spill files
+            File[] leftovers = spillDir.listFiles();
+            if (leftovers != null) {
+                for (File leftover : leftovers) {
+                    leftover.delete();
+                }
+            }
+            spillDir.delete();
+        }
+    }
+
+    // The single pass over the journal; each account's lines go to the partition its ID hashes to
+    private List<File> split(File spillDir, int partitions) throws IOException {
+        List<File> spillFiles = new ArrayList<>(partitions);
+        for (int p = 0; p < partitions; p++) {
+            spillFiles.add(new File(spillDir, "partition-" + p + ".txt"));
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), StandardCharsets.UTF_8))) {
+            copyLines(reader, spillFiles, line -> Math.floorMod(LedgerEvent.parseAccountId(line).hashCode(), partitions));
+        }
+        return spillFiles;
+    }
+
+    // Exports the accounts of one spill file; one that holds more than a group is first split into
+    // runs of consecutive accounts (in order of first appearance), at most 2x accountsPerGroup runs at a time
+    private int exportPartition(File spillFile) throws IOException {
+        List<String> accounts = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(spillFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String accountId = LedgerEvent.parseAccountId(line);
+                if (seen.add(accountId)) {
+                    accounts.add(accountId);
+                }
+            }
+        }
+        if (accounts.size() <= accountsPerGroup) {
+            return exportGroup(accounts, spillFile);
+        }
+
+        int runs = Math.min(2 * accountsPerGroup, (accounts.size() + accountsPerGroup - 1) / accountsPerGroup);
+        Map<String, Integer> runByAccount = new HashMap<>();
+        for (int i = 0; i < accounts.size(); i++) {
+            runByAccount.put(accounts.get(i), (int) ((long) i * runs / accounts.size()));
+        }
+        List<File> runFiles = new ArrayList<>(runs);
+        for (int r = 0; r < runs; r++) {
+            runFiles.add(new File(spillFile.getParentFile(), spillFile.getName().replace(".txt", "-" + r + ".txt")));
+        }
+        try {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(spillFile), StandardCharsets.UTF_8))) {
+                copyLines(reader, runFiles, line -> runByAccount.get(LedgerEvent.parseAccountId(line)));
+            }
+            int exported = 0;
+            for (File runFile : runFiles) {
+                exported += exportPartition(runFile);
+            }
+            return exported;
+        } finally {
+            for (File runFile : runFiles) {
+                runFile.delete();
+            }
+        }
+    }
+
+    // Copies each non-empty line to the file chosen for it, with every target file open until the end
+    private static void copyLines(BufferedReader reader, List<File> targets, ToIntFunction<String> target) throws IOException {
+        List<BufferedWriter> writers = new ArrayList<>(targets.size());
+        try {
+            for (File file : targets) {
+                writers.add(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)));
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                BufferedWriter writer = writers.get(target.applyAsInt(line));
+                writer.write(line);
+                writer.newLine();
+            }
+        } finally {
+            IOException failure = null;
+            for (BufferedWriter writer : writers) {
+                try {
+                    writer.close();
+                } catch (IOException ex) {
+                    failure = ex;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private int exportGroup(List<String> group, File spillFile) throws IOException {
+        Map<String, AccountStatement> statements = new HashMap<>();
+        try {
+            for (String accountId : group) {
+                AccountStatement statement = new AccountStatement();
+                statements.put(accountId, statement);
+                statement.writers.add(new CsvStatementWriter(new File(outputDir, accountId + ".csv")));
+                statement.writers.add(new PdfStatementWriter(new File(outputDir, accountId + ".pdf")));
+            }
+
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(spillFile), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    LedgerEvent event = LedgerEvent.parse(line);
+                    AccountStatement statement = statements.get(event.getAccountId());
+                    begin(statement, event.getAccountId());
+                    for (StatementWriter writer : statement.writers) {
+                        writer.transaction(event);
+                    }
+                    statement.state.apply(event);
+                }
+            }
+
+            for (Map.Entry<String, AccountStatement> entry : statements.entrySet()) {
+                AccountStatement statement = entry.getValue();
+                begin(statement, entry.getKey());
+                for (StatementWriter writer : statement.writers) {
+                    writer.end(statement.state);
+                }
+            }
+            return group.size();
+        } finally {
+            for (AccountStatement statement : statements.values()) {
+                for (StatementWriter writer : statement.writers) {
+                    try {
+                        writer.close();
+                    } catch (IOException ex) {
+                        // Keep closing the others; the export already failed or is complete
+                    }
+                }
+            }
+        }
+    }
+
+    private static void begin(AccountStatement statement, String accountId) throws IOException {
+        if (!statement.begun) {
+            for (StatementWriter writer : statement.writers) {
+                writer.begin(accountId, statement.state.getSavingsBalance());
+            }
+            statement.begun = true;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        File journalFile = new File(args.length > 0 ? args[0] : System.getProperty(BankingApp.JOURNAL_PROPERTY, "ledger_journal.txt"));
+        File outputDir = new File(args.length > 1 ? args[1] : "statements");
+        int workers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int accountsPerGroup = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+
+        StatementExporter exporter = new StatementExporter(journalFile, outputDir, workers, accountsPerGroup);
+        long start = System.nanoTime();
+        int exported = exporter.export();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("Exported %d statements (CSV and PDF) to %s in %.2f s: %.1f statements/s using %d workers",
+            exported, outputDir, seconds, exported / seconds, workers));
+    }
+}
@@ -0,0 +1,16 @@
+package advancedbank;
+
+/*
+ * Statement Writer: receives one account's statement a transaction at a time
+ * Implementations write straight to their output and keep no transaction history
+ */
+import java.io.Closeable;
+import java.io.IOException;
+
+public interface StatementWriter extends Closeable {
+    void begin(String accountId, double openingBalance) throws IOException;
+
+    void transaction(LedgerEvent event) throws IOException;
+
+    void end(LedgerState closing) throws IOException;
+}
@@ -0,0 +1,246 @@
+package advancedbank;
+
+/*
+ * Velocity Limiter: per-account limits on how often and how much can be moved in a time window
+ * e.g. at most 5 withdrawals per minute and at most $20,000 withdrawn per 24 hours
+ * Each window is split into buckets; an account keeps one timestamp, count and amount
+ * per bucket in primitive arrays, so a check touches a few cache lines and allocates nothing
+ *
+ * Limits are configured per product (Withdrawal, Personal, Home, Car) with system properties:
+ *   -Dbank.velocity.Withdrawal=5/1m,$20000/24h
+ *   -Dbank.velocity.Home=2/24h,$500000/24h
+ * where "n/window" limits the count and "$amount/window" the total amount; window units are s, m and h
+ */
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public class VelocityLimiter {
+    public static final String WITHDRAWAL = "Withdrawal";
+    public static final String PROPERTY_PREFIX = "bank.velocity.";
+    private static final int BUCKETS = 12;
+
+    private static final String[][] DEFAULT_LIMITS = {
+        {WITHDRAWAL, "5/1m,$20000/24h"},
+        {"Personal", "3/24h,$50000/24h"},
+        {"Home", "2/24h,$500000/24h"},
+        {"Car", "2/24h,$100000/24h"}
+    };
+
+    // One count or amount limit over a sliding window
+    public static class Limit {
+        private final long windowMillis;
+        private final long bucketMillis;
+        private final int maxCount; // 0 when the limit is on the amount
+        private final double maxAmount; // 0 when the limit is on the count
+        private final String spec;
+        private final LongAdder rejections = new LongAdder();
+
+        Limit(String spec) {
+            String[] parts = spec.trim().split("/");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid velocity limit: " + spec);
+            }
+            this.spec = spec.trim();
+            this.windowMillis = parseWindow(parts[1].trim());
+            this.bucketMillis = Math.max(1, windowMillis / BUCKETS);
+            if (parts[0].startsWith("$")) {
+                this.maxCount = 0;
+                this.maxAmount = Double.parseDouble(parts[0].substring(1));
+            } else {
+                this.maxCount = Integer.parseInt(parts[0]);
+                this.maxAmount = 0;
+            }
+            // 0 marks the other kind of limit, so a zero or negative maximum would silently mean "no limit"
+            if (windowMillis <= 0 || (maxCount == 0 && !(maxAmount > 0)) || maxCount < 0) {
+                throw new IllegalArgumentException("Velocity limit must be positive: " + spec);
+            }
+        }
+
+        private static long parseWindow(String window) {
+            long value = Long.parseLong(window.substring(0, window.length() - 1));
+            switch (window.charAt(window.length() - 1)) {
+                case 's': return value * 1000;
+                case 'm': return value * 60 * 1000;
+                case 'h': return value * 60 * 60 * 1000;
+                default: throw new IllegalArgumentException("Invalid velocity window: " + window);
+            }
+        }
+
+        public long getRejections() {
+            return rejections.sum();
+        }
+
+        String describe() {
+            return maxCount > 0 ? "max " + maxCount + " per " + spec.substring(spec.indexOf('/') + 1)
+                                : "max $" + new DecimalFormat("#,##0.00").format(maxAmount) + " per " + spec.substring(spec.indexOf('/') + 1);
+        }
+    }
+
+    // Limits and counters of one product
+    private static class Product {
+        final Limit[] limits;
+        final LongAdder checks = new LongAdder();
+        final LongAdder rejections = new LongAdder();
+
+        Product(Limit[] limits) {
+            this.limits = limits;
+        }
+    }
+
+    // Bucketed counters of one account for one product, BUCKETS slots per limit
+    private static class Window {
+        final long[] bucketEpochs;
+        final int[] counts;
+        final double[] amounts;
+
+        Window(int limits) {
+            bucketEpochs = new long[limits * BUCKETS];
+            counts = new int[limits * BUCKETS];
+            amounts = new double[limits * BUCKETS];
+            Arrays.fill(bucketEpochs, -1);
+        }
+    }
+
+    private volatile Map<String, Product> products = new LinkedHashMap<>(); // Copied on write
+    private final Map<String, Map<String, Window>> windows = new ConcurrentHashMap<>(); // Account -> product -> window
+
+    public VelocityLimiter() {
+        for (String[] product : DEFAULT_LIMITS) {
+            configure(product[0], System.getProperty(PROPERTY_PREFIX + product[0], product[1]));
+        }
+    }
+
+    // Replaces the limits of a product; an empty spec removes them
+    public synchronized void configure(String product, String spec) {
+        List<Limit> limits = new ArrayList<>();
+        for (String part : spec.split(",")) {
+            if (!part.trim().isEmpty()) {
+                limits.add(new Limit(part));
+            }
+        }
+        Map<String, Product> updated = new LinkedHashMap<>(products);
+        updated.put(product, new Product(limits.toArray(new Limit[0])));
+        products = updated;
+        for (Map<String, Window> accountWindows : windows.values()) {
+            accountWindows.remove(product);
+        }
+    }
+
+    // Longest configured window; operations older than this no longer count against any limit
+    public long getLongestWindowMillis() {
+        long longest = 0;
+        for (Product config : products.values()) {
+            for (Limit limit : config.limits) {
+                longest = Math.max(longest, limit.windowMillis);
+            }
+        }
+        return longest;
+    }
+
+    // Counts an operation that was already accepted, e.g. when replaying the journal on restart; calls must be in time order
+    public void record(String accountId, String product, double amount, long now) {
+        Product config = products.get(product);
+        if (config == null || config.limits.length == 0) {
+            return;
+        }
+        Window window = window(accountId, product, config);
+        synchronized (window) {
+            add(config, window, amount, now);
+        }
+    }
+
+    public String tryAcquire(String accountId, String product, double amount) {
+        return tryAcquire(accountId, product, amount, System.currentTimeMillis());
+    }
+
+    // Records the operation and returns null if it is within every limit, otherwise the reason it was rejected
+    public String tryAcquire(String accountId, String product, double amount, long now) {
+        Product config = products.get(product);
+        if (config == null || config.limits.length == 0) {
+            return null;
+        }
+        config.checks.increment();
+        Window window = window(accountId, product, config);
+        synchronized (window) {
+            // Check every limit before recording, so a rejected operation does not use up the window
+            for (int l = 0; l < config.limits.length; l++) {
+                Limit limit = config.limits[l];
+                long epoch = now / limit.bucketMillis;
+                int count = 0;
+                double total = 0;
+                for (int b = l * BUCKETS, end = b + BUCKETS; b < end; b++) {
+                    if (window.bucketEpochs[b] > epoch - BUCKETS) {
+                        count += window.counts[b];
+                        total += window.amounts[b];
+                    }
+                }
+                if ((limit.maxCount > 0 && count + 1 > limit.maxCount)
+                        || (limit.maxAmount > 0 && total + amount > limit.maxAmount)) {
+                    limit.rejections.increment();
+                    config.rejections.increment();
+                    return product + " limit reached (" + limit.describe() + ")";
+                }
+            }
+            add(config, window, amount, now);
+        }
+        return null;
+    }
+
+    private Window window(String accountId, String product, Product config) {
+        Map<String, Window> accountWindows = windows.get(accountId);
+        if (accountWindows == null) {
+            accountWindows = windows.computeIfAbsent(accountId, id -> new ConcurrentHashMap<>());
+        }
+        Window window = accountWindows.get(product);
+        if (window == null || window.counts.length != config.limits.length * BUCKETS) {
+            // First use, or the product was reconfigured since the window was created
+            int slots = config.limits.length * BUCKETS;
+            window = accountWindows.compute(product, (p, w) -> w != null && w.counts.length == slots ? w : new Window(config.limits.length));
+        }
+        return window;
+    }
+
+    // Must be called holding the window's lock
+    private static void add(Product config, Window window, double amount, long now) {
+        for (int l = 0; l < config.limits.length; l++) {
+            long epoch = now / config.limits[l].bucketMillis;
+            int b = l * BUCKETS + (int) (epoch % BUCKETS);
+            if (window.bucketEpochs[b] != epoch) {
+                window.bucketEpochs[b] = epoch;
+                window.counts[b] = 0;
+                window.amounts[b] = 0;
+            }
+            window.counts[b]++;
+            window.amounts[b] += amount;
+        }
+    }
+
+    public long getChecks(String product) {
+        Product config = products.get(product);
+        return config == null ? 0 : config.checks.sum();
+    }
+
+    public long getRejections(String product) {
+        Product config = products.get(product);
+        return config == null ? 0 : config.rejections.sum();
+    }
+
+    public synchronized String describeStats() {
+        StringBuilder sb = new StringBuilder("Velocity limits:");
+        for (Map.Entry<String, Product> entry : products.entrySet()) {
+            Product config = entry.getValue();
+            sb.append(System.lineSeparator()).append("  ").append(entry.getKey()).append(": ")
+              .append(config.checks.sum()).append(" checked, ").append(config.rejections.sum()).append(" rejected");
+            for (Limit limit : config.limits) {
+                sb.append(" [").append(limit.describe()).append(": ").append(limit.getRejections()).append(" hits]");
+            }
+        }
+        return sb.toString();
+    }
+}
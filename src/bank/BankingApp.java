@@ -1,4 +1,9 @@
 package bank;
+import bankcore.Account;
+import bankcore.Ledger;
+import bankcore.LoanProduct;
+import bankcore.Operation;
+
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
@@ -17,11 +22,11 @@ Also add facility to
 ⦁	pay EMI in 12 months
  */
 public class BankingApp extends JFrame {
-    private double savingsBalance = 1000.00; // Initial balance
-    private double loanAmount = 0.0;
-    private double emiAmount = 0.0;
-    private int emiTenure = 0;
+    private static final String LOAN_TYPE = "Loan";
+    private static final long NO_OPERATION_ID = 0; // Operations are not deduplicated here
     private final double INTEREST_RATE = 0.08; // 8% annual interest
+    // 1000.00 initial balance; no savings interest and no eligibility cap, one 1-year loan product
+    private final Ledger ledger = new Ledger("SB-0001", new Account(1000.00, 0, null, new LoanProduct(LOAN_TYPE, INTEREST_RATE, 12)));
     private ExecutorService executor = Executors.newFixedThreadPool(2); // Thread pool for operations
 
     // UI Components
@@ -40,6 +45,7 @@ public class BankingApp extends JFrame {
 
         // Initialize components
         initComponents();
+        ledger.addInterceptor(Ledger.Stage.NOTIFY, "ui", (operation, account) -> onLedgerResult(operation.getResult()));
 
         // Add window listener to shutdown executor
         addWindowListener(new WindowAdapter() {
@@ -58,9 +64,9 @@ public class BankingApp extends JFrame {
         northPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
         northPanel.setBackground(new Color(220, 220, 220));
 
-        balanceLabel = new JLabel("Savings Balance: $" + formatAmount(savingsBalance));
-        loanLabel = new JLabel("Loan Amount: $" + formatAmount(loanAmount));
-        emiLabel = new JLabel("EMI: $" + formatAmount(emiAmount) + " (Remaining: " + emiTenure + " months)");
+        balanceLabel = new JLabel("Savings Balance: $" + formatAmount(ledger.getSavingsBalance()));
+        loanLabel = new JLabel("Loan Amount: $" + formatAmount(ledger.getLoanAmount()));
+        emiLabel = new JLabel("EMI: $" + formatAmount(ledger.getEmiAmount()) + " (Remaining: " + ledger.getEmiTenure() + " months)");
         
         northPanel.add(new JLabel("Account Status:", SwingConstants.RIGHT));
         northPanel.add(balanceLabel);
@@ -143,11 +149,7 @@ public class BankingApp extends JFrame {
                 logMessage("Invalid deposit amount!");
                 return;
             }
-            synchronized (this) {
-                savingsBalance += amount;
-                updateUI();
-                logMessage("Deposited $" + formatAmount(amount) + " successfully");
-            }
+            ledger.deposit(NO_OPERATION_ID, amount);
             Thread.sleep(1000); // Simulate processing time
         } catch (NumberFormatException ex) {
             logMessage("Invalid deposit amount format!");
@@ -165,15 +167,7 @@ public class BankingApp extends JFrame {
                 logMessage("Invalid withdrawal amount!");
                 return;
             }
-            synchronized (this) {
-                if (amount <= savingsBalance) {
-                    savingsBalance -= amount;
-                    updateUI();
-                    logMessage("Withdrawn $" + formatAmount(amount) + " successfully");
-                } else {
-                    logMessage("Insufficient balance!");
-                }
-            }
+            ledger.withdraw(NO_OPERATION_ID, amount);
             Thread.sleep(1000); // Simulate processing time
         } catch (NumberFormatException ex) {
             logMessage("Invalid withdrawal amount format!");
@@ -191,22 +185,7 @@ public class BankingApp extends JFrame {
                 logMessage("Invalid loan amount!");
                 return;
             }
-            synchronized (this) {
-                if (loanAmount == 0) {
-                    loanAmount = amount;
-                    emiTenure = 12; // 1-year loan term
-                    emiAmount = calculateEMI(amount, INTEREST_RATE, emiTenure);
-                    SwingUtilities.invokeLater(() -> {
-                        emiPayField.setText(formatAmount(emiAmount));
-                        emiPayField.setEditable(true);
-                        emiButton.setEnabled(true);
-                    });
-                    updateUI();
-                    logMessage("Loan of $" + formatAmount(amount) + " approved. EMI: $" + formatAmount(emiAmount) + "/month");
-                } else {
-                    logMessage("Existing loan must be cleared first!");
-                }
-            }
+            ledger.requestLoan(NO_OPERATION_ID, LOAN_TYPE, amount);
             Thread.sleep(1500); // Simulate loan processing time
         } catch (NumberFormatException ex) {
             logMessage("Invalid loan amount format!");
@@ -219,33 +198,9 @@ public class BankingApp extends JFrame {
 
     private void processEMIPayment() {
         try {
-            double amount = Double.parseDouble(emiPayField.getText());
-            if (amount != emiAmount) {
-                logMessage("Please pay exact EMI amount: $" + formatAmount(emiAmount));
-                return;
-            }
-            synchronized (this) {
-                if (amount <= savingsBalance) {
-                    savingsBalance -= amount;
-                    loanAmount -= amount;
-                    emiTenure--;
-                    if (emiTenure <= 0 || loanAmount <= 0) {
-                        loanAmount = 0;
-                        emiAmount = 0;
-                        emiTenure = 0;
-                        SwingUtilities.invokeLater(() -> {
-                            emiPayField.setEditable(false);
-                            emiButton.setEnabled(false);
-                        });
-                        logMessage("Loan fully repaid!");
-                    } else {
-                        logMessage("EMI of $" + formatAmount(amount) + " paid successfully");
-                    }
-                    updateUI();
-                } else {
-                    logMessage("Insufficient balance to pay EMI!");
-                }
-            }
+            // The field shows the EMI with grouping separators; the ledger checks it against the current EMI
+            double amount = Double.parseDouble(emiPayField.getText().replace(",", ""));
+            ledger.payEmi(NO_OPERATION_ID, amount);
             Thread.sleep(1000); // Simulate EMI processing time
         } catch (NumberFormatException ex) {
             logMessage("Invalid EMI amount format!");
@@ -254,21 +209,90 @@ public class BankingApp extends JFrame {
         }
     }
 
-    private double calculateEMI(double principal, double annualRate, int months) {
-        double monthlyRate = annualRate / 12;
-        return (principal * monthlyRate * Math.pow(1 + monthlyRate, months)) /
-               (Math.pow(1 + monthlyRate, months) - 1);
+    // Called by the ledger under its lock, so messages and labels are updated in ledger order
+    private void onLedgerResult(Ledger.Result result) {
+        switch (result.getStatus()) {
+            case APPLIED:
+                break;
+            case DUPLICATE:
+                logMessage("Duplicate request ignored: operation was already applied");
+                return;
+            case INVALID_AMOUNT:
+                logMessage("Invalid amount!");
+                return;
+            case INVALID_LOAN_TYPE:
+                logMessage("Unknown loan type!");
+                return;
+            case INSUFFICIENT_BALANCE:
+                logMessage(result.getType() == Operation.Type.EMI ? "Insufficient balance to pay EMI!" : "Insufficient balance!");
+                return;
+            case EXISTING_LOAN:
+                logMessage("Existing loan must be cleared first!");
+                return;
+            case EXCEEDS_ELIGIBILITY:
+                logMessage("Loan amount exceeds eligibility!");
+                return;
+            case NO_LOAN:
+                logMessage("No active loan to pay EMI for!");
+                return;
+            case WRONG_EMI_AMOUNT:
+                logMessage("Please pay exact EMI amount: $" + formatAmount(result.getEmiAmount()));
+                return;
+            case LIMIT_REACHED:
+                logMessage((result.getType() == Operation.Type.LOAN ? "Loan request" : "Withdrawal") + " rejected: " + result.getDetail());
+                return;
+            case NOT_PERSISTED:
+                logMessage("Operation failed and was undone: " + result.getDetail());
+                return;
+        }
+
+        double amount = result.getAmount();
+        switch (result.getType()) {
+            case DEPOSIT:
+                updateUI(result);
+                logMessage("Deposited $" + formatAmount(amount) + " successfully");
+                break;
+            case WITHDRAWAL:
+                updateUI(result);
+                logMessage("Withdrawn $" + formatAmount(amount) + " successfully");
+                break;
+            case LOAN:
+                String emi = formatAmount(result.getEmiAmount());
+                SwingUtilities.invokeLater(() -> {
+                    emiPayField.setText(emi);
+                    emiPayField.setEditable(true);
+                    emiButton.setEnabled(true);
+                });
+                updateUI(result);
+                logMessage("Loan of $" + formatAmount(amount) + " approved. EMI: $" + emi + "/month");
+                break;
+            case EMI:
+                if (result.getLoanAmount() == 0) {
+                    SwingUtilities.invokeLater(() -> {
+                        emiPayField.setEditable(false);
+                        emiButton.setEnabled(false);
+                    });
+                    logMessage("Loan fully repaid!");
+                } else {
+                    logMessage("EMI of $" + formatAmount(amount) + " paid successfully");
+                }
+                updateUI(result);
+                break;
+            default:
+                break;
+        }
     }
 
     private String formatAmount(double amount) {
         return new DecimalFormat("#,##0.00").format(amount);
     }
 
-    private void updateUI() {
+    // Uses the state captured with the result, never the live account
+    private void updateUI(Ledger.Result result) {
         SwingUtilities.invokeLater(() -> {
-            balanceLabel.setText("Savings Balance: $" + formatAmount(savingsBalance));
-            loanLabel.setText("Loan Amount: $" + formatAmount(loanAmount));
-            emiLabel.setText("EMI: $" + formatAmount(emiAmount) + " (Remaining: " + emiTenure + " months)");
+            balanceLabel.setText("Savings Balance: $" + formatAmount(result.getSavingsBalance()));
+            loanLabel.setText("Loan Amount: $" + formatAmount(result.getLoanAmount()));
+            emiLabel.setText("EMI: $" + formatAmount(result.getEmiAmount()) + " (Remaining: " + result.getEmiTenure() + " months)");
         });
     }
 
@@ -0,0 +1,151 @@
+package bankcore;
+
+/*
+ * Account: savings balance and at most one loan, with the rules every operation must pass
+ * Not thread-safe; a Ledger only touches it while holding its lock
+ */
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class Account {
+    private static final double CENT = 0.005; // EMI amounts are entered to the cent
+
+    private final double savingsInterestRate;
+    private final EligibilityRule eligibilityRule; // null when loans are not capped by the balance
+    private final Map<String, LoanProduct> products = new LinkedHashMap<>();
+
+    private double savingsBalance;
+    private double loanAmount = 0.0;
+    private double emiAmount = 0.0;
+    private int emiTenure = 0;
+    private String currentLoanType = null;
+
+    public Account(double openingBalance, double savingsInterestRate, EligibilityRule eligibilityRule, LoanProduct... products) {
+        this.savingsBalance = openingBalance;
+        this.savingsInterestRate = savingsInterestRate;
+        this.eligibilityRule = eligibilityRule;
+        for (LoanProduct product : products) {
+            this.products.put(product.getName(), product);
+        }
+    }
+
+    public double getSavingsBalance() { return savingsBalance; }
+    public double getLoanAmount() { return loanAmount; }
+    public double getEmiAmount() { return emiAmount; }
+    public int getEmiTenure() { return emiTenure; }
+    public String getCurrentLoanType() { return currentLoanType; }
+
+    public LoanProduct getProduct(String loanType) {
+        return loanType == null ? null : products.get(loanType);
+    }
+
+    public double getEligibility() {
+        return eligibilityRule == null ? Double.POSITIVE_INFINITY : eligibilityRule.eligibility(savingsBalance, loanAmount, currentLoanType);
+    }
+
+    // Account fields at one point in time, to undo an operation that could not be persisted
+    static final class Snapshot {
+        private final double savingsBalance, loanAmount, emiAmount;
+        private final int emiTenure;
+        private final String currentLoanType;
+
+        private Snapshot(Account account) {
+            this.savingsBalance = account.savingsBalance;
+            this.loanAmount = account.loanAmount;
+            this.emiAmount = account.emiAmount;
+            this.emiTenure = account.emiTenure;
+            this.currentLoanType = account.currentLoanType;
+        }
+    }
+
+    Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    void restore(Snapshot snapshot) {
+        restore(snapshot.savingsBalance, snapshot.loanAmount, snapshot.emiAmount, snapshot.emiTenure, snapshot.currentLoanType);
+    }
+
+    // Replaces the state, e.g. with one recovered from a journal
+    void restore(double savingsBalance, double loanAmount, double emiAmount, int emiTenure, String currentLoanType) {
+        this.savingsBalance = savingsBalance;
+        this.loanAmount = loanAmount;
+        this.emiAmount = emiAmount;
+        this.emiTenure = emiTenure;
+        this.currentLoanType = currentLoanType;
+    }
+
+    // Returns why the operation cannot be applied to the current state, or null if it can
+    Ledger.Status check(Operation operation) {
+        double amount = operation.getRequestedAmount();
+        switch (operation.getType()) {
+            case DEPOSIT:
+                return amount > 0 ? null : Ledger.Status.INVALID_AMOUNT;
+            case WITHDRAWAL:
+                if (!(amount > 0)) {
+                    return Ledger.Status.INVALID_AMOUNT;
+                }
+                return amount > savingsBalance ? Ledger.Status.INSUFFICIENT_BALANCE : null;
+            case LOAN:
+                if (!(amount > 0)) {
+                    return Ledger.Status.INVALID_AMOUNT;
+                }
+                if (getProduct(operation.getLoanType()) == null) {
+                    return Ledger.Status.INVALID_LOAN_TYPE;
+                }
+                if (loanAmount > 0) {
+                    return Ledger.Status.EXISTING_LOAN;
+                }
+                return amount > getEligibility() ? Ledger.Status.EXCEEDS_ELIGIBILITY : null;
+            case EMI:
+                if (loanAmount <= 0) {
+                    return Ledger.Status.NO_LOAN;
+                }
+                if (Math.abs(amount - emiAmount) >= CENT) {
+                    return Ledger.Status.WRONG_EMI_AMOUNT;
+                }
+                return emiAmount > savingsBalance ? Ledger.Status.INSUFFICIENT_BALANCE : null;
+            default:
+                return null;
+        }
+    }
+
+    // Applies an operation that passed check(), recording the amount actually moved
+    void apply(Operation operation) {
+        double amount = operation.getRequestedAmount();
+        switch (operation.getType()) {
+            case DEPOSIT:
+                savingsBalance += amount;
+                break;
+            case WITHDRAWAL:
+                savingsBalance -= amount;
+                break;
+            case LOAN:
+                LoanProduct product = getProduct(operation.getLoanType());
+                loanAmount = amount;
+                currentLoanType = product.getName();
+                emiTenure = product.getTenureMonths();
+                emiAmount = product.calculateEMI(amount);
+                break;
+            case EMI:
+                // The exact EMI is deducted; the amount entered only has to match it to the cent
+                amount = emiAmount;
+                operation.setLoanType(currentLoanType);
+                savingsBalance -= amount;
+                loanAmount -= amount;
+                emiTenure--;
+                if (emiTenure <= 0 || loanAmount <= 0) {
+                    loanAmount = 0;
+                    emiAmount = 0;
+                    emiTenure = 0;
+                    currentLoanType = null;
+                }
+                break;
+            case INTEREST:
+                amount = savingsBalance * savingsInterestRate / 12;
+                savingsBalance += amount;
+                break;
+        }
+        operation.setAmount(amount);
+    }
+}
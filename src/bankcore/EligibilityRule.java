@@ -0,0 +1,10 @@
+package bankcore;
+
+/*
+ * Eligibility Rule: the largest loan an account may take, from the account state it depends on
+ * Account checks loans against it; a view model that caches the result must be built with the
+ * same rule and recompute it whenever one of these inputs changes
+ */
+public interface EligibilityRule {
+    double eligibility(double savingsBalance, double loanAmount, String currentLoanType);
+}
@@ -0,0 +1,11 @@
+package bankcore;
+
+/*
+ * Interceptor: one step of a Ledger's operation pipeline, called under the ledger lock
+ * VALIDATION and LIMITS interceptors may reject the operation; APPLY and JOURNAL interceptors
+ * only see applied operations, and a JOURNAL interceptor that cannot persist one fails it,
+ * which undoes it; NOTIFY interceptors see every result
+ */
+public interface Interceptor {
+    void intercept(Operation operation, Account account);
+}
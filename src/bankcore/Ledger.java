@@ -0,0 +1,229 @@
+package bankcore;
+
+/*
+ * Ledger: an Account behind one lock, with every operation run through a pipeline of stages
+ *   VALIDATION  may reject before the account rules are checked (e.g. duplicates)
+ *   LIMITS      may reject after the account rules pass (e.g. velocity limits)
+ *   APPLY       sees the account right after it changed (e.g. cached views of it)
+ *   JOURNAL     persists the applied operation (e.g. journal and replication); if that fails the
+ *               account is put back as it was and APPLY runs again so views follow it
+ *   NOTIFY      sees every result, applied or not (e.g. UI and metrics)
+ * Each stage is an array of interceptors; a stage nobody registered for, or whose
+ * interceptors were disabled, is an empty loop, so it costs nothing per operation
+ * Results carry a sequence number in lock order and the account state after the operation
+ *
+ * Optional interceptors can be switched off by name with -Dbank.pipeline.disabled=name,name;
+ * the others keep the account correct and durable, so naming one only prints a warning
+ */
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class Ledger {
+    public static final String DISABLED_INTERCEPTORS_PROPERTY = "bank.pipeline.disabled";
+
+    public enum Stage {VALIDATION, LIMITS, APPLY, JOURNAL, NOTIFY}
+
+    public enum Status {
+        APPLIED, DUPLICATE, INVALID_AMOUNT, INVALID_LOAN_TYPE, INSUFFICIENT_BALANCE,
+        EXISTING_LOAN, EXCEEDS_ELIGIBILITY, NO_LOAN, WRONG_EMI_AMOUNT, LIMIT_REACHED,
+        NOT_PERSISTED // Applied, then undone because it could not be written to the journal
+    }
+
+    // Outcome of one operation and the account state right after it
+    public static class Result {
+        private final long sequence;
+        private final Status status;
+        private final Operation.Type type;
+        private final long operationId;
+        private final double amount; // Amount moved, by the original operation for DUPLICATE
+        private final String loanType; // Loan the operation was about, if any
+        private final String detail; // Reason given by the interceptor that rejected the operation
+        private final long offset; // Journal offset of the operation, or of the original for DUPLICATE
+        private final String warning; // Journal or replication problem after the operation was applied
+        private final double savingsBalance; // Balance after the operation, after the original one for DUPLICATE
+        private final double loanAmount, emiAmount; // Loan state after the call
+        private final int emiTenure;
+        private final String currentLoanType;
+
+        Result(Operation operation, Account account) {
+            this.sequence = operation.getSequence();
+            this.status = operation.getStatus();
+            this.type = operation.getType();
+            this.operationId = operation.getOperationId();
+            this.amount = operation.getAmount();
+            this.loanType = operation.getLoanType();
+            this.detail = operation.getDetail();
+            this.offset = operation.getOffset();
+            this.warning = operation.getWarning();
+            this.savingsBalance = status == Status.DUPLICATE ? operation.getOriginalBalance() : account.getSavingsBalance();
+            this.loanAmount = account.getLoanAmount();
+            this.emiAmount = account.getEmiAmount();
+            this.emiTenure = account.getEmiTenure();
+            this.currentLoanType = account.getCurrentLoanType();
+        }
+
+        public long getSequence() { return sequence; }
+        public Status getStatus() { return status; }
+        public Operation.Type getType() { return type; }
+        public long getOperationId() { return operationId; }
+        public double getAmount() { return amount; }
+        public String getLoanType() { return loanType; }
+        public String getDetail() { return detail; }
+        public long getOffset() { return offset; }
+        public String getWarning() { return warning; }
+        public double getSavingsBalance() { return savingsBalance; }
+        public double getLoanAmount() { return loanAmount; }
+        public double getEmiAmount() { return emiAmount; }
+        public int getEmiTenure() { return emiTenure; }
+        public String getCurrentLoanType() { return currentLoanType; }
+
+        public boolean isApplied() {
+            return status == Status.APPLIED;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + sequence + " " + type + " " + status + " amount=" + amount + (loanType != null ? " " + loanType : "")
+                + " -> balance=" + savingsBalance + ", loan=" + loanAmount + ", emi=" + emiAmount + " x " + emiTenure;
+        }
+    }
+
+    private static final Interceptor[] NONE = new Interceptor[0];
+
+    private final String accountId;
+    private final Account account;
+    private final List<String> disabled;
+    private final Interceptor[][] stages = new Interceptor[Stage.values().length][];
+    private final List<List<String>> stageNames = new ArrayList<>();
+    private long sequence = 0;
+
+    public Ledger(String accountId, Account account) {
+        this.accountId = accountId;
+        this.account = account;
+        this.disabled = Arrays.asList(System.getProperty(DISABLED_INTERCEPTORS_PROPERTY, "").split("\\s*,\\s*"));
+        for (int s = 0; s < stages.length; s++) {
+            stages[s] = NONE;
+            stageNames.add(new ArrayList<>());
+        }
+    }
+
+    public String getAccountId() {
+        return accountId;
+    }
+
+    // Appends an interceptor the ledger cannot run correctly without, e.g. duplicate protection or the journal
+    public synchronized void addInterceptor(Stage stage, String name, Interceptor interceptor) {
+        if (disabled.contains(name)) {
+            System.err.println("Interceptor " + name + " is required and cannot be disabled with -D" + DISABLED_INTERCEPTORS_PROPERTY);
+        }
+        add(stage, name, interceptor);
+    }
+
+    // Appends an interceptor that can be left out, e.g. metrics, unless it is disabled by name; returns whether it was added
+    public synchronized boolean addOptionalInterceptor(Stage stage, String name, Interceptor interceptor) {
+        if (disabled.contains(name)) {
+            return false;
+        }
+        add(stage, name, interceptor);
+        return true;
+    }
+
+    private void add(Stage stage, String name, Interceptor interceptor) {
+        Interceptor[] current = stages[stage.ordinal()];
+        Interceptor[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = interceptor;
+        stages[stage.ordinal()] = updated;
+        stageNames.get(stage.ordinal()).add(name);
+    }
+
+    public synchronized boolean hasInterceptor(String name) {
+        for (List<String> names : stageNames) {
+            if (names.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // e.g. "validation[deduplication] -> limits[velocity] -> apply[] -> journal[] -> notify[ui]"
+    public synchronized String describePipeline() {
+        StringBuilder sb = new StringBuilder();
+        for (Stage stage : Stage.values()) {
+            if (sb.length() > 0) {
+                sb.append(" -> ");
+            }
+            sb.append(stage.name().toLowerCase()).append(stageNames.get(stage.ordinal()));
+        }
+        return sb.toString();
+    }
+
+    public synchronized Result deposit(long operationId, double amount) {
+        return execute(Operation.Type.DEPOSIT, operationId, amount, null);
+    }
+
+    public synchronized Result withdraw(long operationId, double amount) {
+        return execute(Operation.Type.WITHDRAWAL, operationId, amount, null);
+    }
+
+    public synchronized Result requestLoan(long operationId, String loanType, double amount) {
+        return execute(Operation.Type.LOAN, operationId, amount, loanType);
+    }
+
+    // The amount must match the current EMI to the cent; the exact EMI is then deducted
+    public synchronized Result payEmi(long operationId, double amount) {
+        return execute(Operation.Type.EMI, operationId, amount, null);
+    }
+
+    public synchronized Result applyInterest(long operationId) {
+        return execute(Operation.Type.INTEREST, operationId, 0, null);
+    }
+
+    // Replaces the account state without running the pipeline, e.g. after replaying a journal
+    public synchronized void restore(double savingsBalance, double loanAmount, double emiAmount, int emiTenure, String currentLoanType) {
+        account.restore(savingsBalance, loanAmount, emiAmount, emiTenure, currentLoanType);
+    }
+
+    public synchronized double getSavingsBalance() { return account.getSavingsBalance(); }
+    public synchronized double getLoanAmount() { return account.getLoanAmount(); }
+    public synchronized double getEmiAmount() { return account.getEmiAmount(); }
+    public synchronized int getEmiTenure() { return account.getEmiTenure(); }
+    public synchronized String getCurrentLoanType() { return account.getCurrentLoanType(); }
+    public synchronized double getEligibility() { return account.getEligibility(); }
+
+    // Must be called holding the lock
+    private Result execute(Operation.Type type, long operationId, double amount, String loanType) {
+        Operation operation = new Operation(++sequence, type, operationId, amount, loanType);
+        if (run(Stage.VALIDATION, operation)) {
+            Status violation = account.check(operation);
+            if (violation != null) {
+                operation.reject(violation, null);
+            } else if (run(Stage.LIMITS, operation)) {
+                Account.Snapshot before = account.snapshot();
+                account.apply(operation);
+                operation.markApplied();
+                run(Stage.APPLY, operation);
+                if (!run(Stage.JOURNAL, operation)) {
+                    // Not persisted: memory must not run ahead of the journal
+                    account.restore(before);
+                    run(Stage.APPLY, operation);
+                }
+            }
+        }
+        Result result = new Result(operation, account);
+        operation.complete(result);
+        run(Stage.NOTIFY, operation);
+        return result;
+    }
+
+    // Returns false as soon as an interceptor rejects the operation
+    private boolean run(Stage stage, Operation operation) {
+        for (Interceptor interceptor : stages[stage.ordinal()]) {
+            interceptor.intercept(operation, account);
+            if (operation.isRejected()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,38 @@
+package bankcore;
+
+/*
+ * Loan Product: the rate and tenure a loan is taken at, and the EMI they give
+ */
+public class LoanProduct {
+    private final String name;
+    private final double annualRate;
+    private final int tenureMonths;
+
+    public LoanProduct(String name, double annualRate, int tenureMonths) {
+        this.name = name;
+        this.annualRate = annualRate;
+        this.tenureMonths = tenureMonths;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getAnnualRate() {
+        return annualRate;
+    }
+
+    public int getTenureMonths() {
+        return tenureMonths;
+    }
+
+    public double calculateEMI(double principal) {
+        return calculateEMI(principal, annualRate, tenureMonths);
+    }
+
+    public static double calculateEMI(double principal, double annualRate, int months) {
+        double monthlyRate = annualRate / 12;
+        return (principal * monthlyRate * Math.pow(1 + monthlyRate, months)) /
+               (Math.pow(1 + monthlyRate, months) - 1);
+    }
+}
@@ -0,0 +1,109 @@
+package bankcore;
+
+/*
+ * Operation: one request travelling through a Ledger's pipeline
+ * Interceptors read the request, reject it or attach a journal offset and warnings;
+ * once the operation is finished its Result is available to the NOTIFY stage
+ */
+public final class Operation {
+    public enum Type {DEPOSIT, WITHDRAWAL, LOAN, EMI, INTEREST}
+
+    private final long sequence;
+    private final Type type;
+    private final long operationId;
+    private final double requestedAmount;
+    private String loanType;
+    private double amount;
+    private Ledger.Status status = Ledger.Status.APPLIED;
+    private String detail;
+    private long offset;
+    private double originalBalance; // Savings balance after the original operation, for a duplicate
+    private String warning;
+    private boolean applied;
+    private Ledger.Result result;
+
+    Operation(long sequence, Type type, long operationId, double requestedAmount, String loanType) {
+        this.sequence = sequence;
+        this.type = type;
+        this.operationId = operationId;
+        this.requestedAmount = requestedAmount;
+        this.loanType = loanType;
+        this.amount = requestedAmount;
+    }
+
+    public long getSequence() { return sequence; }
+    public Type getType() { return type; }
+    public long getOperationId() { return operationId; }
+    public double getRequestedAmount() { return requestedAmount; }
+    public String getLoanType() { return loanType; }
+    public double getAmount() { return amount; }
+    public Ledger.Status getStatus() { return status; }
+    public String getDetail() { return detail; }
+    public long getOffset() { return offset; }
+    public String getWarning() { return warning; }
+
+    // Available to NOTIFY interceptors only
+    public Ledger.Result getResult() {
+        return result;
+    }
+
+    public boolean isRejected() {
+        return status != Ledger.Status.APPLIED;
+    }
+
+    // Stops the operation before it is applied; only VALIDATION and LIMITS interceptors may call this
+    public void reject(Ledger.Status status, String detail) {
+        if (applied || result != null || status == Ledger.Status.APPLIED) {
+            throw new IllegalStateException("Cannot reject " + type + " with " + status + " at this stage");
+        }
+        this.status = status;
+        this.detail = detail;
+    }
+
+    // Stops a repeat of an operation that was already applied, reporting what the original did
+    public void rejectAsDuplicate(long offset, double amount, double savingsBalance) {
+        reject(Ledger.Status.DUPLICATE, null);
+        this.offset = offset;
+        this.amount = amount;
+        this.originalBalance = savingsBalance;
+    }
+
+    // Undoes an applied operation that could not be persisted; only JOURNAL interceptors may call this
+    public void fail(Ledger.Status status, String detail) {
+        if (!applied || result != null || status == Ledger.Status.APPLIED) {
+            throw new IllegalStateException("Cannot fail " + type + " with " + status + " at this stage");
+        }
+        this.status = status;
+        this.detail = detail;
+    }
+
+    // Journal offset of the operation, or of the original one for a duplicate
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    // A problem after the operation was applied, e.g. it could not be persisted
+    public void addWarning(String warning) {
+        this.warning = this.warning == null ? warning : this.warning + "; " + warning;
+    }
+
+    double getOriginalBalance() {
+        return originalBalance;
+    }
+
+    void setLoanType(String loanType) {
+        this.loanType = loanType;
+    }
+
+    void setAmount(double amount) {
+        this.amount = amount;
+    }
+
+    void markApplied() {
+        this.applied = true;
+    }
+
+    void complete(Ledger.Result result) {
+        this.result = result;
+    }
+}
@@ -0,0 +1,45 @@
+package bankcore;
+
+/*
+ * Operation Metrics: NOTIFY interceptor counting results by operation type and status
+ */
+import java.util.concurrent.atomic.LongAdder;
+
+public class OperationMetrics implements Interceptor {
+    private final LongAdder[][] counts = new LongAdder[Operation.Type.values().length][Ledger.Status.values().length];
+
+    public OperationMetrics() {
+        for (LongAdder[] row : counts) {
+            for (int s = 0; s < row.length; s++) {
+                row[s] = new LongAdder();
+            }
+        }
+    }
+
+    @Override
+    public void intercept(Operation operation, Account account) {
+        counts[operation.getType().ordinal()][operation.getStatus().ordinal()].increment();
+    }
+
+    public long getCount(Operation.Type type, Ledger.Status status) {
+        return counts[type.ordinal()][status.ordinal()].sum();
+    }
+
+    // e.g. "Operations: DEPOSIT 12 applied; WITHDRAWAL 4 applied, 1 insufficient_balance"
+    public String describeStats() {
+        StringBuilder sb = new StringBuilder("Operations:");
+        for (Operation.Type type : Operation.Type.values()) {
+            StringBuilder statuses = new StringBuilder();
+            for (Ledger.Status status : Ledger.Status.values()) {
+                long count = getCount(type, status);
+                if (count > 0) {
+                    statuses.append(statuses.length() > 0 ? ", " : " ").append(count).append(' ').append(status.name().toLowerCase());
+                }
+            }
+            if (statuses.length() > 0) {
+                sb.append(sb.length() > "Operations:".length() ? ";" : "").append(' ').append(type).append(statuses);
+            }
+        }
+        return sb.toString();
+    }
+}